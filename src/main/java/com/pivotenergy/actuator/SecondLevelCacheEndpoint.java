@@ -0,0 +1,61 @@
+package com.pivotenergy.actuator;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.CacheRegionStatistics;
+import org.hibernate.stat.Statistics;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.Selector;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Exposes hit and miss ratios of the hibernate second level cache per region at /actuator/l2cache,
+ * the counts stay at zero unless pivot.cache.statistics is enabled
+ */
+@Component
+@Endpoint(id = "l2cache")
+public class SecondLevelCacheEndpoint {
+    private final Statistics statistics;
+
+    @Autowired
+    SecondLevelCacheEndpoint(EntityManagerFactory entityManagerFactory) {
+        this.statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+    }
+
+    @ReadOperation
+    public Map<String, Map<String, Object>> regions() {
+        Map<String, Map<String, Object>> regions = new TreeMap<>();
+        for (String region : statistics.getSecondLevelCacheRegionNames()) {
+            regions.put(region, region(region));
+        }
+
+        return regions;
+    }
+
+    @ReadOperation
+    public Map<String, Object> region(@Selector String region) {
+        CacheRegionStatistics regionStatistics = statistics.getDomainDataRegionStatistics(region);
+        if (regionStatistics == null) {
+            return null;
+        }
+
+        long hits = regionStatistics.getHitCount();
+        long misses = regionStatistics.getMissCount();
+        long requests = hits + misses;
+
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("hits", hits);
+        values.put("misses", misses);
+        values.put("puts", regionStatistics.getPutCount());
+        values.put("hitRatio", requests == 0 ? 0d : (double) hits / requests);
+        values.put("missRatio", requests == 0 ? 0d : (double) misses / requests);
+        values.put("elementsInMemory", regionStatistics.getElementCountInMemory());
+        return values;
+    }
+}
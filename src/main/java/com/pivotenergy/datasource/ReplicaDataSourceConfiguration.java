@@ -0,0 +1,69 @@
+package com.pivotenergy.datasource;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+
+/**
+ * Replaces the auto-configured data source with one routing read-only transactions to a replica,
+ * only when {@code pivot.datasource.replica.url} is set. The primary keeps the {@code spring.datasource}
+ * settings, the replica pool is tuned with {@code pivot.datasource.replica.hikari.*}.
+ */
+@Configuration
+@ConditionalOnProperty("pivot.datasource.replica.url")
+public class ReplicaDataSourceConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    HikariDataSource primaryDataSource(DataSourceProperties properties) {
+        HikariDataSource dataSource = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        dataSource.setPoolName("primary");
+        return dataSource;
+    }
+
+    @Bean
+    @ConfigurationProperties("pivot.datasource.replica.hikari")
+    HikariDataSource replicaDataSource(DataSourceProperties properties,
+                                       @Value("${pivot.datasource.replica.url}") String url,
+                                       @Value("${pivot.datasource.replica.username:}") String username,
+                                       @Value("${pivot.datasource.replica.password:}") String password) {
+        HikariDataSource dataSource = new HikariDataSource();
+        dataSource.setPoolName("replica");
+        dataSource.setDriverClassName(properties.determineDriverClassName());
+        dataSource.setJdbcUrl(url);
+        dataSource.setUsername(username);
+        dataSource.setPassword(password);
+        dataSource.setReadOnly(true);
+        return dataSource;
+    }
+
+    @Bean
+    ReplicaHealth replicaHealth(@Qualifier("replicaDataSource") DataSource replica,
+                                @Value("${pivot.datasource.replica.lag-query:}") String lagQuery,
+                                @Value("${pivot.datasource.replica.max-lag:5}") long maxLagSeconds) {
+        return new ReplicaHealth(replica, lagQuery, maxLagSeconds);
+    }
+
+    @Bean
+    ReplicaRoutingDataSource routingDataSource(@Qualifier("primaryDataSource") DataSource primary,
+                                               @Qualifier("replicaDataSource") DataSource replica,
+                                               ReplicaHealth health,
+                                               @Value("${pivot.datasource.replica.sticky-window:5000}") long stickyMillis) {
+        return new ReplicaRoutingDataSource(primary, replica, health, stickyMillis);
+    }
+
+    @Bean
+    @Primary
+    DataSource dataSource(ReplicaRoutingDataSource routingDataSource) {
+        return new LazyConnectionDataSourceProxy(routingDataSource);
+    }
+}
@@ -0,0 +1,75 @@
+package com.pivotenergy.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Tracks whether the replica can serve reads. The replica is usable when it answers within the
+ * timeout and, if a lag query is configured, reports a lag of at most the allowed number of seconds.
+ * A lag query returning no row or {@code NULL}, as a stopped replication does, marks it unusable.
+ *
+ * The replica starts as unusable and is only used after the first successful check.
+ */
+public class ReplicaHealth {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaHealth.class);
+    private static final int TIMEOUT_SECONDS = 2;
+
+    private final DataSource replica;
+    private final String lagQuery;
+    private final long maxLagSeconds;
+    private volatile boolean usable;
+
+    /**
+     * @param replica replica pool
+     * @param lagQuery query returning the replication lag in seconds as its first column, only
+     *                 reachability is checked if empty
+     * @param maxLagSeconds largest lag at which the replica is still used
+     */
+    public ReplicaHealth(DataSource replica, String lagQuery, long maxLagSeconds) {
+        this.replica = replica;
+        this.lagQuery = lagQuery == null ? "" : lagQuery.trim();
+        this.maxLagSeconds = maxLagSeconds;
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    @Scheduled(fixedDelayString = "${pivot.datasource.replica.check-interval:5000}")
+    public void check() {
+        boolean result;
+        try (Connection connection = replica.getConnection()) {
+            result = lagQuery.isEmpty() ? connection.isValid(TIMEOUT_SECONDS) : lagWithinLimit(connection);
+        }
+        catch (SQLException e) {
+            LOG.debug("Replica check failed", e);
+            result = false;
+        }
+
+        if (result != usable) {
+            LOG.warn(result ? "Replica is back, read-only transactions use it again"
+                    : "Replica is down or lagging, read-only transactions use the primary");
+        }
+        usable = result;
+    }
+
+    private boolean lagWithinLimit(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.setQueryTimeout(TIMEOUT_SECONDS);
+            try (ResultSet rs = statement.executeQuery(lagQuery)) {
+                if (!rs.next()) {
+                    return false;
+                }
+                long lag = rs.getLong(1);
+                return !rs.wasNull() && lag <= maxLagSeconds;
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.pivotenergy.datasource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Sends read-only transactions to the replica and everything else to the primary.
+ *
+ * A caller who committed a write reads from the primary for the sticky window afterwards, so its
+ * own changes are visible even if the replica has not applied them yet. Reads also go to the
+ * primary while {@link ReplicaHealth} reports the replica as down or lagging.
+ *
+ * The route is decided when a connection is taken, so this data source has to be wrapped in a
+ * {@link org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy}: transactions only
+ * become read-only after they began, the proxy takes the connection on the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    private static final int MAX_TRACKED_WRITERS = 10000;
+
+    public enum Route {
+        PRIMARY,
+        REPLICA
+    }
+
+    private final ReplicaHealth health;
+    private final long stickyMillis;
+    private final LongSupplier clock;
+    private final Map<String, Long> lastWrites = new ConcurrentHashMap<>();
+
+    /**
+     * @param primary primary pool
+     * @param replica replica pool
+     * @param health replica health
+     * @param stickyMillis how long a caller keeps reading from the primary after a write
+     */
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaHealth health, long stickyMillis) {
+        this(primary, replica, health, stickyMillis, System::currentTimeMillis);
+    }
+
+    ReplicaRoutingDataSource(DataSource primary, DataSource replica, ReplicaHealth health, long stickyMillis,
+                             LongSupplier clock) {
+        this.health = health;
+        this.stickyMillis = stickyMillis;
+        this.clock = clock;
+
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(Route.PRIMARY, primary);
+        targets.put(Route.REPLICA, replica);
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Route determineCurrentLookupKey() {
+        String caller = caller();
+
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            if (caller != null && TransactionSynchronizationManager.isSynchronizationActive()) {
+                TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                    @Override
+                    public void afterCommit() {
+                        recordWrite(caller);
+                    }
+                });
+            }
+            return Route.PRIMARY;
+        }
+
+        if (!health.isUsable() || (caller != null && isSticky(caller))) {
+            return Route.PRIMARY;
+        }
+
+        return Route.REPLICA;
+    }
+
+    /**
+     * @return whether the current caller committed a write within the sticky window, its read-only
+     * transactions go to the primary even while the replica is usable
+     */
+    public boolean isCallerSticky() {
+        String caller = caller();
+        return caller != null && isSticky(caller);
+    }
+
+    private boolean isSticky(String caller) {
+        Long lastWrite = lastWrites.get(caller);
+        return lastWrite != null && clock.getAsLong() - lastWrite < stickyMillis;
+    }
+
+    private void recordWrite(String caller) {
+        long now = clock.getAsLong();
+        if (lastWrites.size() >= MAX_TRACKED_WRITERS) {
+            lastWrites.values().removeIf(lastWrite -> now - lastWrite >= stickyMillis);
+        }
+        lastWrites.put(caller, now);
+    }
+
+    private static String caller() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication == null ? null : authentication.getName();
+    }
+}
@@ -0,0 +1,114 @@
+package com.pivotenergy.datasource;
+
+import com.pivotenergy.security.model.UserSession;
+import org.hibernate.Session;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManager;
+import java.util.function.Supplier;
+
+/**
+ * Hibernate filter restricting tenant-owned entities to the tenant of the current {@link UserSession}.
+ *
+ * The filter is declared in the package-info of {@code com.pivotenergy.domain} and enabled by
+ * {@link TenantFilterTransactionManager} at the start of every transaction, so entity queries, counts and
+ * paging get the predicate without stating it. Hibernate does not apply filters to bulk
+ * {@code UPDATE}/{@code DELETE} statements, those pass {@link #currentTenant()} as a parameter instead.
+ *
+ * Without an authenticated user the filter matches no rows at all, logins, scheduled jobs and other
+ * reads across tenants state it by running in {@link #unfiltered(EntityManager, Supplier)}.
+ */
+public final class TenantFilter {
+    /**
+     * Name of the filter, referenced by the {@code @Filter} annotations of the entities
+     */
+    public static final String NAME = "tenant";
+
+    /**
+     * Name of the filter parameter holding the tenant id
+     */
+    public static final String PARAMETER = "tenantId";
+
+    /**
+     * Bound when there is no tenant, group ids are generated and never empty
+     */
+    static final String NO_TENANT = "";
+
+    private static final ThreadLocal<Boolean> SUSPENDED = new ThreadLocal<>();
+
+    private TenantFilter() {
+    }
+
+    /**
+     * @return tenant of the authenticated user or {@literal null} if the caller is not a user
+     */
+    public static String tenantOrNull() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof UserSession)) {
+            return null;
+        }
+        return ((UserSession) authentication.getPrincipal()).getTenantId();
+    }
+
+    /**
+     * @return tenant of the authenticated user
+     * @throws IllegalStateException if the caller is not a user, tenant-scoped writes never run unscoped
+     */
+    public static String currentTenant() {
+        String tenantId = tenantOrNull();
+        if (tenantId == null) {
+            throw new IllegalStateException("Tenant-scoped statement without an authenticated user");
+        }
+        return tenantId;
+    }
+
+    /**
+     * Runs the work with the filter disabled, for the few queries which look across tenants on purpose.
+     * Covers a transaction already running as well as transactions the work begins itself.
+     *
+     * @param entityManager shared entity manager
+     * @param work queries to run unfiltered
+     * @return result of the work
+     */
+    public static <T> T unfiltered(EntityManager entityManager, Supplier<T> work) {
+        Session session = TransactionSynchronizationManager.isActualTransactionActive()
+                ? entityManager.unwrap(Session.class)
+                : null;
+        boolean wasEnabled = session != null && session.getEnabledFilter(NAME) != null;
+        Boolean wasSuspended = SUSPENDED.get();
+
+        if (wasEnabled) {
+            session.disableFilter(NAME);
+        }
+        SUSPENDED.set(Boolean.TRUE);
+        try {
+            return work.get();
+        }
+        finally {
+            if (wasSuspended == null) {
+                SUSPENDED.remove();
+            }
+            if (wasEnabled) {
+                enable(session);
+            }
+        }
+    }
+
+    /**
+     * Enables the filter for the current tenant, or for no tenant if there is no user. The filter is
+     * only disabled while it is suspended.
+     *
+     * @param session session of the transaction
+     */
+    static void enable(Session session) {
+        if (SUSPENDED.get() != null) {
+            session.disableFilter(NAME);
+            return;
+        }
+
+        String tenantId = tenantOrNull();
+        session.enableFilter(NAME).setParameter(PARAMETER, tenantId == null ? NO_TENANT : tenantId);
+    }
+}
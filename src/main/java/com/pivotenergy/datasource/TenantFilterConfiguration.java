@@ -0,0 +1,24 @@
+package com.pivotenergy.datasource;
+
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.boot.autoconfigure.transaction.TransactionManagerCustomizers;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Replaces the auto-configured JPA transaction manager with the one enabling the {@link TenantFilter}.
+ */
+@Configuration
+public class TenantFilterConfiguration {
+
+    @Bean
+    PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory,
+                                                  ObjectProvider<TransactionManagerCustomizers> customizers) {
+        TenantFilterTransactionManager transactionManager = new TenantFilterTransactionManager(entityManagerFactory);
+        customizers.ifAvailable(x -> x.customize(transactionManager));
+        return transactionManager;
+    }
+}
@@ -0,0 +1,32 @@
+package com.pivotenergy.datasource;
+
+import org.hibernate.Session;
+import org.springframework.orm.jpa.EntityManagerHolder;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Binds the tenant of the current user to the {@link TenantFilter} once per transaction instead of
+ * evaluating it in every query. The filter is enabled or disabled on each begin, an entity manager
+ * shared by several transactions of a request never keeps the state of an earlier one.
+ */
+public class TenantFilterTransactionManager extends JpaTransactionManager {
+
+    public TenantFilterTransactionManager(EntityManagerFactory entityManagerFactory) {
+        super(entityManagerFactory);
+    }
+
+    @Override
+    protected void doBegin(Object transaction, TransactionDefinition definition) {
+        super.doBegin(transaction, definition);
+
+        EntityManagerHolder holder = (EntityManagerHolder) TransactionSynchronizationManager
+                .getResource(obtainEntityManagerFactory());
+        if (holder != null) {
+            TenantFilter.enable(holder.getEntityManager().unwrap(Session.class));
+        }
+    }
+}
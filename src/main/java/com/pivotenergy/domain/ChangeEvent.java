@@ -0,0 +1,72 @@
+package com.pivotenergy.domain;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+import javax.persistence.*;
+import java.util.Date;
+
+/**
+ * Outbox entry recording that a user or group changed, written in the transaction making the change.
+ * Only the kind of change is recorded, consumers fetch the current state themselves. The sequence
+ * number is assigned by the relay after commit and is the offset consumers of the change feed resume from.
+ */
+@SuppressWarnings("unused")
+@Entity
+@Table(name = "change_event")
+@NoArgsConstructor
+@Getter
+public class ChangeEvent {
+    public enum Type {
+        USER,
+        /**
+         * Deleting a group deletes its members, no event is recorded for each of them
+         */
+        GROUP
+    }
+
+    public enum Operation {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+
+    @Id
+    @GeneratedValue(generator = TimeOrderedIdGenerator.NAME)
+    @Column(length = 36, nullable = false)
+    private String id;
+
+    @Column(name = "sequence_number", unique = true)
+    private Long sequenceNumber;
+
+    @Column(name = "group_id", length = 36, nullable = false)
+    private String groupId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "entity_type", length = 16, nullable = false)
+    private Type type;
+
+    @Column(name = "entity_id", length = 36, nullable = false)
+    private String entityId;
+
+    @Enumerated(EnumType.STRING)
+    @Column(length = 16, nullable = false)
+    private Operation operation;
+
+    @Column(name = "created_at", nullable = false)
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date createdAt;
+
+    public ChangeEvent(String groupId, Type type, String entityId, Operation operation) {
+        this.groupId = groupId;
+        this.type = type;
+        this.entityId = entityId;
+        this.operation = operation;
+        this.createdAt = new Date();
+    }
+
+    public ChangeEvent setSequenceNumber(Long sequenceNumber) {
+        this.sequenceNumber = sequenceNumber;
+        return this;
+    }
+}
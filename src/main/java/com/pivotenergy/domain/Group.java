@@ -20,7 +20,11 @@
 
 package com.pivotenergy.domain;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
 import org.hibernate.annotations.Where;
 import org.hibernate.validator.constraints.URL;
 
@@ -29,14 +33,18 @@ import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Size;
+import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 
 @SuppressWarnings("unused")
 @Entity
+@DynamicUpdate
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @Table(name = "user_group")
 @NoArgsConstructor
-public class Group extends BaseDomainEntity<Group> {
+public class Group extends BaseDomainEntity<Group> implements Versioned<Group> {
     @Size(min = 4, message="The group name must be at least 4 character long")
     @NotBlank(message="The group name cannot be empty")
     private String name;
@@ -66,6 +74,18 @@ public class Group extends BaseDomainEntity<Group> {
     @Column(name = "type", nullable = false, length = 128)
     private Type type = Type.CLIENT;
 
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
+    // set by the soft delete statement, groups deleted longer than the retention are moved to the archive
+    @JsonIgnore
+    @Column(name = "deleted_at")
+    @Temporal(TemporalType.TIMESTAMP)
+    private Date deletedAt;
+
+    // unbounded, never serialized or iterated; members are read page by page through UserRepository
+    @JsonIgnore
     @OneToMany(mappedBy = "group", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
     @Where(clause="deleted = false")
     @PrimaryKeyJoinColumn
@@ -134,6 +154,17 @@ public class Group extends BaseDomainEntity<Group> {
         return this;
     }
 
+    @Override
+    public Long getVersion() {
+        return version;
+    }
+
+    @Override
+    public Group setVersion(Long version) {
+        this.version = version;
+        return this;
+    }
+
     public Set<User> getUsers() {
         return users;
     }
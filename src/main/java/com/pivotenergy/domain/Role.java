@@ -22,7 +22,11 @@ package com.pivotenergy.domain;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.pivotenergy.datasource.TenantFilter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.Filter;
 import org.springframework.util.Assert;
 
 import javax.persistence.*;
@@ -30,7 +34,10 @@ import javax.validation.constraints.NotNull;
 
 @SuppressWarnings("unused")
 @Entity
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
 @NoArgsConstructor
+@Filter(name = TenantFilter.NAME)
 public class Role extends MultiTenantBaseDomainEntity<Role> {
     @Column(name = "role", nullable = false, length = 128)
     private String role;
@@ -98,6 +105,17 @@ public class Role extends MultiTenantBaseDomainEntity<Role> {
         return this;
     }
 
+    /**
+     * @param user user or an uninitialized reference to it, its group is not accessed
+     * @param groupId tenant of the user
+     * @return this role
+     */
+    public Role setUser(User user, String groupId) {
+        this.user = user;
+        this.groupId = groupId;
+        return this;
+    }
+
     public Role setRole(Scope scope, Action action, Target target) {
         Assert.notNull(scope, "Scope cannot be null");
         Assert.notNull(scope, "Action cannot be null");
@@ -110,6 +128,33 @@ public class Role extends MultiTenantBaseDomainEntity<Role> {
         return this;
     }
 
+    /**
+     * @param name role name as built by {@link #setRole(Scope, Action, Target)}, e.g. ROLE_USER_READ_GLOBAL
+     * @return new role
+     * @throws IllegalArgumentException if the name is not a known scope, action and target combination
+     */
+    public static Role fromName(String name) {
+        for (Scope scope : Scope.values()) {
+            if (!name.startsWith(scope + "_")) {
+                continue;
+            }
+            String remainder = name.substring(scope.name().length() + 1);
+            for (Action action : Action.values()) {
+                if (!remainder.startsWith(action + "_")) {
+                    continue;
+                }
+                String target = remainder.substring(action.name().length() + 1);
+                for (Target candidate : Target.values()) {
+                    if (candidate.name().equals(target)) {
+                        return new Role().setRole(scope, action, candidate);
+                    }
+                }
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unknown role '%s'", name));
+    }
+
 
     public enum Scope {
         ROLE_ADMIN,
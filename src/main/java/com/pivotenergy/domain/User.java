@@ -22,13 +22,19 @@ package com.pivotenergy.domain;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.pivotenergy.datasource.TenantFilter;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.hibernate.annotations.BatchSize;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Filter;
 import org.springframework.util.Assert;
 
 import javax.persistence.*;
+import javax.validation.constraints.AssertTrue;
 import javax.validation.constraints.Email;
 import javax.validation.constraints.NotBlank;
 import javax.validation.constraints.NotNull;
@@ -40,11 +46,11 @@ import java.util.Set;
 
 @SuppressWarnings("unused")
 @Entity
+@DynamicUpdate
 @Getter
 @NoArgsConstructor
-public class User extends MultiTenantBaseDomainEntity<User> {
-    private static final PasswordEncoder ENCODER = new BCryptPasswordEncoder();
-
+@Filter(name = TenantFilter.NAME)
+public class User extends MultiTenantBaseDomainEntity<User> implements Versioned<User> {
     @NotBlank
     private String locale;
 
@@ -79,13 +85,34 @@ public class User extends MultiTenantBaseDomainEntity<User> {
     @Temporal(value= TemporalType.TIMESTAMP)
     private Date lastLoginAttempt;
 
+    // set by the soft delete statements, users deleted longer than the retention are moved to the archive
+    @JsonIgnore
+    @Temporal(value = TemporalType.TIMESTAMP)
+    private Date deletedAt;
+
+    // roles of all users in a page are initialized with one IN query instead of one query per user
     @OneToMany(mappedBy = "user", cascade = CascadeType.ALL, fetch = FetchType.LAZY)
+    @BatchSize(size = 100)
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE)
     @PrimaryKeyJoinColumn
     private Set<Role> roles = new HashSet<>();
 
-    @NotBlank
+    // bcrypt hash, request bodies set the plain text password through setPassword and never see the hash
+    @JsonProperty(access = JsonProperty.Access.WRITE_ONLY)
     private String password = null;
 
+    /**
+     * Plain text password given through {@link #setPassword(String)}, the service layer replaces it
+     * with its hash before the user is saved
+     */
+    @Transient
+    @JsonIgnore
+    private String rawPassword;
+
+    @Version
+    @Column(nullable = false, columnDefinition = "bigint default 0")
+    private Long version;
+
     @ManyToOne
     @JoinColumn(name = "groupId")
     @JsonIgnore
@@ -152,17 +179,57 @@ public class User extends MultiTenantBaseDomainEntity<User> {
         return this;
     }
 
+    /**
+     * Keeps the plain text password until it is hashed, setting it never runs a hash itself
+     *
+     * @param password plain text password
+     * @return this user
+     */
     public User setPassword(String password) {
         Assert.notNull(password, "password cannot be null");
-        this.password = ENCODER.encode(password);
+        this.rawPassword = password;
+        return this;
+    }
+
+    /**
+     * Never bound from a request body, a client could otherwise store a hash of its choosing
+     *
+     * @param password bcrypt hash, replaces any plain text password which has not been hashed yet
+     * @return this user
+     */
+    @JsonIgnore
+    public User setEncodedPassword(String password) {
+        Assert.notNull(password, "password cannot be null");
+        this.password = password;
+        this.rawPassword = null;
         return this;
     }
 
+    @JsonIgnore
+    @AssertTrue(message = "must not be blank")
+    public boolean isPasswordPresent() {
+        return (rawPassword != null && !rawPassword.trim().isEmpty()) || password != null;
+    }
+
+    @PrePersist
+    @PreUpdate
+    void requireHashedPassword() {
+        if (rawPassword != null) {
+            throw new IllegalStateException(String.format("The password of user %s has not been hashed", email));
+        }
+    }
+
     public User setGroup(Group group) {
         this.group = group;
         return this;
     }
 
+    @Override
+    public User setVersion(Long version) {
+        this.version = version;
+        return this;
+    }
+
     @JsonIgnore
     public boolean isValid() {
         return enabled && !locked && !expired && Objects.nonNull(password);
@@ -2,8 +2,10 @@ package com.pivotenergy.domain;
 
 import com.fasterxml.jackson.annotation.JsonBackReference;
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.pivotenergy.datasource.TenantFilter;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Filter;
 import org.hibernate.validator.constraints.NotEmpty;
 
 import javax.persistence.*;
@@ -13,6 +15,7 @@ import java.util.Date;
 @Entity
 @NoArgsConstructor
 @Getter
+@Filter(name = TenantFilter.NAME)
 public class UserRefreshToken extends MultiTenantBaseDomainEntity<UserRefreshToken> {
 
     @NotEmpty
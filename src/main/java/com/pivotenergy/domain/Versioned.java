@@ -0,0 +1,16 @@
+package com.pivotenergy.domain;
+
+/**
+ * Entity with an optimistic locking version, used for ETags and conditional requests.
+ *
+ * @param <T> entity type
+ */
+public interface Versioned<T> {
+
+    /**
+     * @return the current version or {@literal null} if the entity has not been persisted yet
+     */
+    Long getVersion();
+
+    T setVersion(Long version);
+}
@@ -0,0 +1,16 @@
+/**
+ * Entities of the account service. Ids of all entities come from {@link com.pivotenergy.domain.TimeOrderedIdGenerator},
+ * wired to the id of the base entity in META-INF/orm.xml.
+ *
+ * Tenant-owned entities carry the {@code tenant} filter declared here, see {@link com.pivotenergy.datasource.TenantFilter}.
+ */
+@GenericGenerator(name = TimeOrderedIdGenerator.NAME, strategy = "com.pivotenergy.domain.TimeOrderedIdGenerator")
+@FilterDef(name = TenantFilter.NAME,
+        parameters = @ParamDef(name = TenantFilter.PARAMETER, type = "string"),
+        defaultCondition = "group_id = :" + TenantFilter.PARAMETER)
+package com.pivotenergy.domain;
+
+import com.pivotenergy.datasource.TenantFilter;
+import org.hibernate.annotations.FilterDef;
+import org.hibernate.annotations.GenericGenerator;
+import org.hibernate.annotations.ParamDef;
@@ -0,0 +1,33 @@
+package com.pivotenergy.exceptions;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+import java.util.function.Supplier;
+
+@ResponseStatus(HttpStatus.PRECONDITION_FAILED)
+public class PivotPreconditionFailedException extends RuntimeException implements Supplier<PivotPreconditionFailedException> {
+
+    PivotPreconditionFailedException() {
+        super("Precondition Failed");
+    }
+
+    public PivotPreconditionFailedException(String message) {
+        super(message);
+    }
+
+    public PivotPreconditionFailedException(String message, String cause) {
+        super(message, new Throwable(cause));
+    }
+
+    public PivotPreconditionFailedException(Class<?> clazz, String id, Long expected, Long actual) {
+        this(String.format("%s has been modified", clazz.getSimpleName()),
+                String.format("%s with id=[%s] is at version %s but version %s was expected",
+                        clazz.getSimpleName(), id, actual, expected));
+    }
+
+    @Override
+    public PivotPreconditionFailedException get() {
+        return this;
+    }
+}
@@ -4,6 +4,7 @@ import org.springframework.core.Ordered;
 import org.springframework.core.annotation.Order;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
 import org.springframework.web.bind.annotation.ExceptionHandler;
 import org.springframework.web.servlet.mvc.method.annotation.ResponseEntityExceptionHandler;
@@ -12,6 +13,7 @@ import java.sql.SQLIntegrityConstraintViolationException;
 
 import static org.springframework.http.HttpStatus.BAD_REQUEST;
 import static org.springframework.http.HttpStatus.NOT_FOUND;
+import static org.springframework.http.HttpStatus.PRECONDITION_FAILED;
 
 @Order(Ordered.HIGHEST_PRECEDENCE)
 @ControllerAdvice
@@ -23,6 +25,18 @@ public class RestExceptionHandler extends ResponseEntityExceptionHandler {
         return buildResponseEntity(apiError);
     }
 
+    @ExceptionHandler(value={PivotPreconditionFailedException.class})
+    protected ResponseEntity<Object> handleException(PivotPreconditionFailedException ex) {
+        ApiError apiError = new ApiError(PRECONDITION_FAILED, ex.getMessage(), ex.getCause());
+        return buildResponseEntity(apiError);
+    }
+
+    @ExceptionHandler(value={ObjectOptimisticLockingFailureException.class})
+    protected ResponseEntity<Object> handleException(ObjectOptimisticLockingFailureException ex) {
+        ApiError apiError = new ApiError(PRECONDITION_FAILED, "Resource has been modified concurrently", ex);
+        return buildResponseEntity(apiError);
+    }
+
     @ExceptionHandler(value={PivotAuthenticationFailureException.class})
     protected ResponseEntity<Object> handleException(PivotAuthenticationFailureException ex) {
         ApiError apiError = new ApiError(BAD_REQUEST, ex.getMessage(), ex.getCause());
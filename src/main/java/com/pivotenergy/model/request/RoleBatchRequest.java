@@ -0,0 +1,53 @@
+package com.pivotenergy.model.request;
+
+import com.pivotenergy.domain.Role;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Roles to grant to or revoke from a set of users of the current tenant.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class RoleBatchRequest {
+    @NotEmpty
+    @Size(max = 10000)
+    private Set<String> userIds = new LinkedHashSet<>();
+
+    @Valid
+    @NotEmpty
+    @Size(max = 100)
+    private Set<Triple> roles = new LinkedHashSet<>();
+
+    @Getter
+    @Setter
+    @NoArgsConstructor
+    @EqualsAndHashCode
+    public static class Triple {
+        @NotNull
+        private Role.Scope scope;
+
+        @NotNull
+        private Role.Action action;
+
+        @NotNull
+        private Role.Target target;
+
+        /**
+         * @return role name as stored on {@link Role}
+         */
+        public String getRole() {
+            return String.format("%s_%s_%s", scope, action, target);
+        }
+    }
+}
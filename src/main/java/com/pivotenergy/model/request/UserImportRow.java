@@ -0,0 +1,48 @@
+package com.pivotenergy.model.request;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.pivotenergy.domain.User;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.Email;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * One line of a bulk user import, either a NDJSON object or a CSV record with a header row.
+ * Roles are given by name, e.g. {@code ROLE_USER_READ_GLOBAL}, and separated by {@code ;} in CSV.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserImportRow {
+    @Email
+    @NotBlank
+    private String email;
+
+    @NotBlank
+    private String firstName;
+
+    @NotBlank
+    private String lastName;
+
+    @NotBlank
+    private String password;
+
+    @NotBlank
+    private String locale = Locale.US.getISO3Language();
+
+    @NotNull
+    private User.Type type = User.Type.USER;
+
+    @NotNull
+    private Boolean enabled = true;
+
+    @JsonFormat(with = JsonFormat.Feature.ACCEPT_SINGLE_VALUE_AS_ARRAY)
+    private List<String> roles = new ArrayList<>();
+}
@@ -0,0 +1,21 @@
+package com.pivotenergy.model.request;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import javax.validation.constraints.NotEmpty;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Ids of users of the current tenant to resolve at once, the largest number of ids per request is
+ * configured with {@code pivot.lookup.max-ids}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class UserLookupRequest {
+    @NotEmpty
+    private List<String> ids = new ArrayList<>();
+}
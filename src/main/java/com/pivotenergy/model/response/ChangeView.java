@@ -0,0 +1,30 @@
+package com.pivotenergy.model.response;
+
+import com.pivotenergy.domain.ChangeEvent;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Immutable representation of a relayed change event, the data of one server-sent event of the change feed.
+ */
+@Getter
+public class ChangeView {
+    private final long sequenceNumber;
+    private final ChangeEvent.Type type;
+    private final String id;
+    private final ChangeEvent.Operation operation;
+    private final Date createdAt;
+
+    private ChangeView(ChangeEvent event) {
+        this.sequenceNumber = event.getSequenceNumber();
+        this.type = event.getType();
+        this.id = event.getEntityId();
+        this.operation = event.getOperation();
+        this.createdAt = event.getCreatedAt();
+    }
+
+    public static ChangeView of(ChangeEvent event) {
+        return new ChangeView(event);
+    }
+}
@@ -0,0 +1,28 @@
+package com.pivotenergy.model.response;
+
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * Keyset page, the next page is requested with {@code after=<next>}. The cost of a page does
+ * not grow with its position, unlike an offset page.
+ *
+ * @param <T> content type
+ */
+@Getter
+public class CursorPage<T> {
+    private final List<T> content;
+    private final int size;
+    private final String next;
+
+    public CursorPage(List<T> content, int size, String next) {
+        this.content = content;
+        this.size = size;
+        this.next = next;
+    }
+
+    public boolean hasNext() {
+        return next != null;
+    }
+}
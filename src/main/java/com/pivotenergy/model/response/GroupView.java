@@ -0,0 +1,49 @@
+package com.pivotenergy.model.response;
+
+import com.pivotenergy.domain.Group;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Immutable representation of a group, serialized like the entity. Members are never part of it,
+ * they are read page by page.
+ */
+@Getter
+public class GroupView {
+    private final String id;
+    private final String name;
+    private final String logoImage;
+    private final String companyName;
+    private final String companyWebsite;
+    private final String contactEmail;
+    private final String phoneNumber;
+    private final Group.Type type;
+    private final Long version;
+    private final Boolean deleted;
+    private final Date createdAt;
+    private final String createdBy;
+    private final Date updatedAt;
+    private final String updatedBy;
+
+    private GroupView(Group group) {
+        this.id = group.getId();
+        this.name = group.getName();
+        this.logoImage = group.getLogoImage();
+        this.companyName = group.getCompanyName();
+        this.companyWebsite = group.getCompanyWebsite();
+        this.contactEmail = group.getContactEmail();
+        this.phoneNumber = group.getPhoneNumber();
+        this.type = group.getType();
+        this.version = group.getVersion();
+        this.deleted = group.getDeleted();
+        this.createdAt = group.getCreatedAt();
+        this.createdBy = group.getCreatedBy();
+        this.updatedAt = group.getUpdatedAt();
+        this.updatedBy = group.getUpdatedBy();
+    }
+
+    public static GroupView of(Group group) {
+        return new GroupView(group);
+    }
+}
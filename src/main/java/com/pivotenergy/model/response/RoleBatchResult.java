@@ -0,0 +1,19 @@
+package com.pivotenergy.model.response;
+
+import lombok.Getter;
+
+/**
+ * Outcome of a batch role grant or revocation.
+ */
+@Getter
+public class RoleBatchResult {
+    private final int users;
+    private final int changed;
+    private final int unchanged;
+
+    public RoleBatchResult(int users, int changed, int unchanged) {
+        this.users = users;
+        this.changed = changed;
+        this.unchanged = unchanged;
+    }
+}
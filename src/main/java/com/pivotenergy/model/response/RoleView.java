@@ -0,0 +1,42 @@
+package com.pivotenergy.model.response;
+
+import com.pivotenergy.domain.Role;
+import lombok.Getter;
+
+import java.util.Date;
+
+/**
+ * Immutable representation of a role, serialized like the entity.
+ */
+@Getter
+public class RoleView {
+    private final String id;
+    private final String role;
+    private final Role.Scope scope;
+    private final Role.Action action;
+    private final Role.Target target;
+    private final String groupId;
+    private final Boolean deleted;
+    private final Date createdAt;
+    private final String createdBy;
+    private final Date updatedAt;
+    private final String updatedBy;
+
+    private RoleView(Role role) {
+        this.id = role.getId();
+        this.role = role.getRole();
+        this.scope = role.getScope();
+        this.action = role.getAction();
+        this.target = role.getTarget();
+        this.groupId = role.getGroupId();
+        this.deleted = role.getDeleted();
+        this.createdAt = role.getCreatedAt();
+        this.createdBy = role.getCreatedBy();
+        this.updatedAt = role.getUpdatedAt();
+        this.updatedBy = role.getUpdatedBy();
+    }
+
+    public static RoleView of(Role role) {
+        return new RoleView(role);
+    }
+}
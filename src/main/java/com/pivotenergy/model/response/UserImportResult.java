@@ -0,0 +1,45 @@
+package com.pivotenergy.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of one row of a bulk user import, streamed back as one NDJSON line per row.
+ */
+@Getter
+@JsonInclude(JsonInclude.Include.NON_EMPTY)
+public class UserImportResult {
+    private final long row;
+    private final String email;
+    private final String id;
+    private final Status status;
+    private final List<String> errors;
+
+    private UserImportResult(long row, String email, String id, Status status, List<String> errors) {
+        this.row = row;
+        this.email = email;
+        this.id = id;
+        this.status = status;
+        this.errors = errors;
+    }
+
+    public static UserImportResult created(long row, String email, String id) {
+        return new UserImportResult(row, email, id, Status.CREATED, Collections.emptyList());
+    }
+
+    public static UserImportResult failed(long row, String email, List<String> errors) {
+        return new UserImportResult(row, email, null, Status.FAILED, errors);
+    }
+
+    public static UserImportResult failed(long row, String email, String error) {
+        return failed(row, email, Collections.singletonList(error));
+    }
+
+    public enum Status {
+        CREATED,
+        FAILED
+    }
+}
@@ -0,0 +1,42 @@
+package com.pivotenergy.model.response;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of a batch lookup with one entry per requested id, in request order. Ids which do not
+ * belong to a user of the tenant are marked as not found instead of failing the whole request.
+ */
+@Getter
+public class UserLookupResult {
+    private final List<Entry> results;
+
+    public UserLookupResult(List<Entry> results) {
+        this.results = Collections.unmodifiableList(results);
+    }
+
+    @Getter
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        private final String id;
+        private final boolean found;
+        private final UserView user;
+
+        private Entry(String id, boolean found, UserView user) {
+            this.id = id;
+            this.found = found;
+            this.user = user;
+        }
+
+        public static Entry found(UserView user) {
+            return new Entry(user.getId(), true, user);
+        }
+
+        public static Entry notFound(String id) {
+            return new Entry(id, false, null);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.pivotenergy.model.response;
+
+import lombok.Getter;
+
+/**
+ * Identifying properties of a user as returned by the typeahead search.
+ */
+@Getter
+public class UserSummary {
+    private final String id;
+    private final String email;
+    private final String firstName;
+    private final String lastName;
+
+    public UserSummary(String id, String email, String firstName, String lastName) {
+        this.id = id;
+        this.email = email;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+}
@@ -0,0 +1,64 @@
+package com.pivotenergy.model.response;
+
+import com.pivotenergy.domain.User;
+import lombok.Getter;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable representation of a user, serialized like the entity without the password. Assembled
+ * inside the transaction loading the user, so serializing it never touches the persistence context.
+ */
+@Getter
+public class UserView {
+    private final String id;
+    private final String email;
+    private final String firstName;
+    private final String lastName;
+    private final String locale;
+    private final User.Type type;
+    private final Boolean enabled;
+    private final Boolean locked;
+    private final Boolean expired;
+    private final Integer failedLoginAttempts;
+    private final Date lastLoginAttempt;
+    private final List<RoleView> roles;
+    private final String groupId;
+    private final Long version;
+    private final Boolean deleted;
+    private final Date createdAt;
+    private final String createdBy;
+    private final Date updatedAt;
+    private final String updatedBy;
+
+    private UserView(User user) {
+        this.id = user.getId();
+        this.email = user.getEmail();
+        this.firstName = user.getFirstName();
+        this.lastName = user.getLastName();
+        this.locale = user.getLocale();
+        this.type = user.getType();
+        this.enabled = user.getEnabled();
+        this.locked = user.getLocked();
+        this.expired = user.getExpired();
+        this.failedLoginAttempts = user.getFailedLoginAttempts();
+        this.lastLoginAttempt = user.getLastLoginAttempt();
+        this.roles = Collections.unmodifiableList(user.getRoles().stream()
+                .map(RoleView::of)
+                .collect(Collectors.toList()));
+        this.groupId = user.getGroupId();
+        this.version = user.getVersion();
+        this.deleted = user.getDeleted();
+        this.createdAt = user.getCreatedAt();
+        this.createdBy = user.getCreatedBy();
+        this.updatedAt = user.getUpdatedAt();
+        this.updatedBy = user.getUpdatedBy();
+    }
+
+    public static UserView of(User user) {
+        return new UserView(user);
+    }
+}
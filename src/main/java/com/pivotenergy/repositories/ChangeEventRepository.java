@@ -0,0 +1,64 @@
+package com.pivotenergy.repositories;
+
+import com.pivotenergy.domain.ChangeEvent;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.LockModeType;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Outbox of the change feed. Change events are not tenant filtered, readers pass the tenant explicitly.
+ */
+@Repository
+@Transactional(readOnly = true)
+public interface ChangeEventRepository extends CrudRepository<ChangeEvent, String> {
+
+    /**
+     * Locks the oldest events without a sequence number, a relay of another instance waits until the
+     * sequence numbers assigned by this one are committed.
+     *
+     * @param pageable limit, the sort is ignored.
+     * @return events in the order they were recorded
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT o FROM ChangeEvent o WHERE o.sequenceNumber IS NULL ORDER BY o.id")
+    List<ChangeEvent> findUnsequenced(Pageable pageable);
+
+    /**
+     * @return the highest sequence number assigned so far
+     */
+    @Query("SELECT MAX(o.sequenceNumber) FROM ChangeEvent o")
+    Optional<Long> findLastSequenceNumber();
+
+    /**
+     * Returns the events of a tenant following the given sequence number.
+     *
+     * @param groupId must not be {@literal null}.
+     * @param after last sequence number the reader has seen.
+     * @param pageable limit, the sort is ignored.
+     * @return events ordered by sequence number
+     */
+    @Query("SELECT o FROM ChangeEvent o WHERE o.groupId = ?1 AND o.sequenceNumber > ?2 ORDER BY o.sequenceNumber")
+    List<ChangeEvent> findByGroupIdAfter(String groupId, long after, Pageable pageable);
+
+    /**
+     * Deletes relayed events recorded before the given date, consumers further behind have to resynchronize.
+     * The last event is kept so sequence numbers never start over.
+     *
+     * @param before must not be {@literal null}.
+     * @param last the highest sequence number assigned so far.
+     * @return number of deleted events
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ChangeEvent o WHERE o.createdAt < ?1 AND o.sequenceNumber < ?2")
+    int deleteSequencedBefore(Date before, long last);
+}
@@ -0,0 +1,217 @@
+package com.pivotenergy.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.SliceImpl;
+import org.springframework.data.domain.Sort;
+
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.dialect.MySQLDialect;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import javax.persistence.EntityManager;
+import javax.persistence.Query;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Builds scalar JPQL selects for a whitelisted set of entity properties. Rows come back as
+ * plain values so no entity is materialized or registered in the persistence context.
+ */
+public final class FieldProjection {
+    private final String entity;
+    private final Set<String> fields;
+    private final List<String> defaults;
+
+    FieldProjection(String entity, String... fields) {
+        this.entity = entity;
+        this.fields = Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(fields)));
+        this.defaults = Collections.unmodifiableList(Arrays.asList(fields));
+    }
+
+    /**
+     * @return the properties which may be requested, in their canonical order
+     */
+    public Set<String> getFields() {
+        return fields;
+    }
+
+    /**
+     * Validates the requested properties against the whitelist
+     *
+     * @param requested requested property names, all properties if null or empty
+     * @return the requested properties in request order without duplicates
+     * @throws IllegalArgumentException if a property is not selectable
+     */
+    public List<String> resolve(Collection<String> requested) {
+        if (requested == null || requested.isEmpty()) {
+            return defaults;
+        }
+
+        List<String> resolved = new ArrayList<>(requested.size());
+        for (String field : requested) {
+            String name = field.trim();
+            if (!fields.contains(name)) {
+                throw new IllegalArgumentException(String.format("Unknown field '%s' for %s, selectable fields are %s",
+                        name, entity, fields));
+            }
+            if (!resolved.contains(name)) {
+                resolved.add(name);
+            }
+        }
+
+        return resolved;
+    }
+
+    /**
+     * @param selected resolved properties
+     * @param where JPQL predicate using the alias {@code o}
+     * @param sort sort order, only whitelisted properties may be sorted on
+     * @return JPQL select statement
+     */
+    String select(List<String> selected, String where, Sort sort) {
+        StringBuilder jpql = new StringBuilder("SELECT ");
+        for (int i = 0; i < selected.size(); i++) {
+            jpql.append(i == 0 ? "o." : ", o.").append(selected.get(i));
+        }
+        jpql.append(" FROM ").append(entity).append(" o WHERE ").append(where);
+
+        String separator = " ORDER BY ";
+        for (Sort.Order order : sort) {
+            if (!fields.contains(order.getProperty())) {
+                throw new IllegalArgumentException(String.format("Cannot sort %s by '%s'", entity, order.getProperty()));
+            }
+            jpql.append(separator).append("o.").append(order.getProperty()).append(' ').append(order.getDirection());
+            separator = ", ";
+        }
+
+        return jpql.toString();
+    }
+
+    /**
+     * @param selected resolved properties
+     * @param row query result row
+     * @return property values keyed by name in selection order
+     */
+    Map<String, Object> toMap(List<String> selected, Object row) {
+        Object[] values = selected.size() == 1 ? new Object[]{row} : (Object[]) row;
+        Map<String, Object> map = new LinkedHashMap<>(selected.size() * 2);
+        for (int i = 0; i < selected.size(); i++) {
+            map.put(selected.get(i), values[i]);
+        }
+
+        return map;
+    }
+
+    /**
+     * Runs a projected select fetching size + 1 rows to detect a next slice
+     *
+     * @param entityManager entity manager
+     * @param requested requested properties
+     * @param where JPQL predicate using the alias {@code o}
+     * @param parameters named parameters of the predicate
+     * @param pageable page request
+     * @return slice of property maps
+     */
+    Slice<Map<String, Object>> slice(EntityManager entityManager, Collection<String> requested, String where,
+                                     Map<String, Object> parameters, Pageable pageable) {
+        List<String> selected = resolve(requested);
+        Query query = entityManager.createQuery(select(selected, where, pageable.getSort()));
+        parameters.forEach(query::setParameter);
+        query.setFirstResult((int) pageable.getOffset());
+        query.setMaxResults(pageable.getPageSize() + 1);
+
+        List<?> rows = query.getResultList();
+        boolean hasNext = rows.size() > pageable.getPageSize();
+        List<Map<String, Object>> content = rows.stream()
+                .limit(pageable.getPageSize())
+                .map(row -> toMap(selected, row))
+                .collect(Collectors.toList());
+
+        return new SliceImpl<>(content, pageable, hasNext);
+    }
+
+    /**
+     * Runs a projected select expected to match at most one row
+     *
+     * @param entityManager entity manager
+     * @param requested requested properties
+     * @param where JPQL predicate using the alias {@code o}
+     * @param parameters named parameters of the predicate
+     * @return property map or {@literal Optional#empty()} if nothing matched
+     */
+    Optional<Map<String, Object>> single(EntityManager entityManager, Collection<String> requested, String where,
+                                         Map<String, Object> parameters) {
+        List<String> selected = resolve(requested);
+        Query query = entityManager.createQuery(select(selected, where, Sort.unsorted()));
+        parameters.forEach(query::setParameter);
+        query.setMaxResults(1);
+
+        List<?> rows = query.getResultList();
+        return rows.stream().findFirst().map(row -> toMap(selected, row));
+    }
+
+    /**
+     * Runs a projected select on a forward-only cursor and hands every row to the consumer as it is read.
+     * Rows are never collected, so memory stays flat regardless of how many rows match.
+     *
+     * @param entityManager entity manager
+     * @param requested requested properties
+     * @param where JPQL predicate using the alias {@code o}
+     * @param parameters named parameters of the predicate
+     * @param fetchSize rows between clears of the persistence context, and fetched per round trip by
+     *                  drivers which honour it
+     * @param consumer receives the property map of each row
+     * @return number of rows read
+     */
+    long scroll(EntityManager entityManager, Collection<String> requested, String where,
+                Map<String, Object> parameters, int fetchSize, Consumer<Map<String, Object>> consumer) {
+        List<String> selected = resolve(requested);
+        org.hibernate.query.Query<?> query = entityManager
+                .createQuery(select(selected, where, Sort.unsorted()))
+                .unwrap(org.hibernate.query.Query.class);
+        parameters.forEach(query::setParameter);
+        query.setFetchSize(streamingFetchSize(entityManager, fetchSize));
+        query.setReadOnly(true);
+        query.setCacheMode(CacheMode.IGNORE);
+
+        long count = 0;
+        try (ScrollableResults rows = query.scroll(ScrollMode.FORWARD_ONLY)) {
+            while (rows.next()) {
+                Object[] row = rows.get();
+                consumer.accept(toMap(selected, row.length == 1 ? row[0] : row));
+                // scalar rows are not managed, clearing keeps anything loaded as a side effect from piling up
+                if (++count % fetchSize == 0) {
+                    entityManager.clear();
+                }
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * MySQL buffers the whole result of a statement unless its fetch size is {@link Integer#MIN_VALUE},
+     * which streams the rows of this statement alone. Cursor fetching for the whole pool would turn every
+     * statement into a server side prepared statement.
+     */
+    private static int streamingFetchSize(EntityManager entityManager, int fetchSize) {
+        Dialect dialect = entityManager.getEntityManagerFactory()
+                .unwrap(SessionFactoryImplementor.class)
+                .getJdbcServices()
+                .getDialect();
+        return dialect instanceof MySQLDialect ? Integer.MIN_VALUE : fetchSize;
+    }
+}
@@ -0,0 +1,44 @@
+package com.pivotenergy.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class GroupProjectionRepositoryImpl implements GroupProjectionRepository {
+    /**
+     * the users association is never selectable
+     */
+    public static final FieldProjection PROJECTION = new FieldProjection("Group",
+            "id", "name", "logoImage", "companyName", "companyWebsite", "contactEmail", "phoneNumber", "type",
+            "version", "createdAt", "createdBy", "updatedAt", "updatedBy");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> findAllProjected(Collection<String> fields, Pageable pageable) {
+        return PROJECTION.slice(entityManager, fields, "o.deleted = false", Collections.emptyMap(), pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> findProjectedById(String id, Collection<String> fields) {
+        return PROJECTION.single(entityManager, fields, "o.deleted = false AND o.id = :id",
+                Collections.singletonMap("id", id));
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long streamProjected(Collection<String> fields, int fetchSize, Consumer<Map<String, Object>> consumer) {
+        return PROJECTION.scroll(entityManager, fields, "o.deleted = false", Collections.emptyMap(), fetchSize, consumer);
+    }
+}
@@ -23,6 +23,7 @@ package com.pivotenergy.repositories;
 import com.pivotenergy.domain.Group;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -31,10 +32,12 @@ import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface GroupRepository extends PagingAndSortingRepository<Group, String> {
+public interface GroupRepository extends PagingAndSortingRepository<Group, String>, GroupProjectionRepository {
     Optional<Group> findByContactEmail(String email);
 
 
@@ -68,7 +71,7 @@ public interface GroupRepository extends PagingAndSortingRepository<Group, Strin
      */
     @Override
     @Transactional(readOnly = true)
-    @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM Group o WHERE o.deleted = false")
+    @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM Group o WHERE o.id = ?1 AND o.deleted = false")
     boolean existsById(String id);
 
     /**
@@ -83,15 +86,60 @@ public interface GroupRepository extends PagingAndSortingRepository<Group, Strin
     void deleteById(String id);
 
     /**
-     * Soft delete the entity with the given id by setting the deleted flag to true.
+     * Deletes the entity with the given id unless it is soft deleted.
      *
      * @param id must not be {@literal null}.
+     * @return 1 if the entity was deleted, 0 if it does not exist or was soft deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Group o WHERE o.id = ?1 AND o.deleted = false")
+    int hardDeleteById(String id);
+
+    /**
+     * Soft delete the entity with the given id by setting the deleted flag to true, the version is
+     * increased so cached representations become stale.
+     *
+     * @param id must not be {@literal null}.
+     * @return 1 if the entity was deleted, 0 if it does not exist or was deleted already
      * @throws IllegalArgumentException in case the given {@code id} is {@literal null}
      */
     @Modifying
-    @Transactional(readOnly = true)
-    @Query("UPDATE Group o SET o.deleted = true WHERE o.id = ?1")
-    void softDeleteById(String id);
+    @Transactional
+    @Query("UPDATE Group o SET o.deleted = true, o.deletedAt = CURRENT_TIMESTAMP, o.version = o.version + 1 " +
+            "WHERE o.id = ?1 AND o.deleted = false")
+    int softDeleteById(String id);
+
+    /**
+     * Restores a soft deleted group, its members are restored separately.
+     *
+     * @param id must not be {@literal null}.
+     * @return 1 if the group was restored, 0 if it does not exist or is not deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE Group o SET o.deleted = false, o.deletedAt = NULL, o.version = o.version + 1 " +
+            "WHERE o.id = ?1 AND o.deleted = true")
+    int restoreById(String id);
+
+    /**
+     * @param id must not be {@literal null}.
+     * @return when the group was soft deleted or {@literal Optional#empty()} if it is not deleted
+     */
+    @Query("SELECT o.deletedAt FROM Group o WHERE o.id = ?1 AND o.deleted = true")
+    Optional<Date> findDeletedAtById(String id);
+
+    /**
+     * Returns the groups which were soft deleted before the given date and have no members left in the
+     * user table, for the archive job. Members are archived first.
+     *
+     * @param before must not be {@literal null}.
+     * @param pageable limit, the sort is ignored.
+     * @return ids of the groups deleted longest ago
+     */
+    @Query("SELECT o.id FROM Group o WHERE o.deleted = true AND o.deletedAt < ?1 " +
+            "AND NOT EXISTS (SELECT u.id FROM User u WHERE u.groupId = o.id) ORDER BY o.deletedAt")
+    List<String> findIdsDeletedBefore(Date before, Pageable pageable);
 
     /**
      * Deletes a given entity.
@@ -136,6 +184,17 @@ public interface GroupRepository extends PagingAndSortingRepository<Group, Strin
     @Query("SELECT o FROM Group o WHERE o.deleted = false")
     Page<Group> findAll(Pageable pageable);
 
+    /**
+     * Returns a slice of instances of the type without counting them, size + 1 rows are fetched
+     * to determine whether a next slice exists.
+     *
+     * @param pageable page request
+     * @return slice of entities
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT o FROM Group o WHERE o.deleted = false")
+    Slice<Group> findAllSliced(Pageable pageable);
+
     /**
      * Retrieves an entity by its id.
      *
@@ -147,4 +206,14 @@ public interface GroupRepository extends PagingAndSortingRepository<Group, Strin
     @Transactional(readOnly = true)
     @Query("SELECT o FROM Group o WHERE o.deleted = false AND o.id = ?1")
     Optional<Group> findById(String id);
+
+    /**
+     * Retrieves only the version of an entity, used to answer conditional requests without loading it.
+     *
+     * @param id must not be {@literal null}.
+     * @return the version of the entity with the given id or {@literal Optional#empty()} if none found
+     */
+    @Transactional(readOnly = true)
+    @Query("SELECT o.version FROM Group o WHERE o.deleted = false AND o.id = ?1")
+    Optional<Long> findVersionById(String id);
 }
\ No newline at end of file
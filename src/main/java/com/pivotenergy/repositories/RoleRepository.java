@@ -21,6 +21,7 @@
 package com.pivotenergy.repositories;
 
 
+import com.pivotenergy.datasource.TenantFilter;
 import com.pivotenergy.domain.Role;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
@@ -28,9 +29,15 @@ import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * Queries are restricted to the tenant of the current user by the {@link TenantFilter}, see {@link UserRepository}.
+ */
 @Repository
+@Transactional(readOnly = true)
 public interface RoleRepository extends PagingAndSortingRepository<Role, String> {
 
     /**
@@ -39,8 +46,7 @@ public interface RoleRepository extends PagingAndSortingRepository<Role, String>
      * @return the number of entities
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT COUNT(o) FROM Role o WHERE o.deleted = false AND o.groupId = ?#{authentication.tenantId}")
+    @Query("SELECT COUNT(o) FROM Role o WHERE o.deleted = false")
     long count();
 
     /**
@@ -51,9 +57,8 @@ public interface RoleRepository extends PagingAndSortingRepository<Role, String>
      * @throws IllegalArgumentException if {@code id} is {@literal null}.
      */
     @Override
-    @Transactional(readOnly = true)
     @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM Role o " +
-            "WHERE o.id = ?1 AND o.deleted = false AND o.groupId = ?#{authentication.tenantId}")
+            "WHERE o.id = ?1 AND o.deleted = false")
     boolean existsById(String id);
 
     /**
@@ -63,28 +68,102 @@ public interface RoleRepository extends PagingAndSortingRepository<Role, String>
      * @throws IllegalArgumentException in case the given {@code id} is {@literal null}
      */
     @Override
+    @Transactional
+    default void deleteById(String id) {
+        deleteByIdAndGroupId(id, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes the entity with the given id if it belongs to the tenant.
+     *
+     * @param id must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     */
     @Modifying
-    @Query("DELETE FROM Role o WHERE o.id = ?1 AND o.groupId = ?#{authentication.tenantId}")
-    void deleteById(String id);
+    @Transactional
+    @Query("DELETE FROM Role o WHERE o.id = ?1 AND o.groupId = ?2")
+    void deleteByIdAndGroupId(String id, String tenantId);
 
     /**
      * Deletes the entity with the given id.
      *
      * @param id must not be {@literal null}.
      * @param userId must not be {@literal null}.
+     * @return number of deleted entities
      * @throws IllegalArgumentException in case the given {@code id} is {@literal null}
      */
+    @Transactional
+    default int deleteByIdAndUserId(String id, String userId) {
+        return deleteByIdAndUserIdAndGroupId(id, userId, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes the entity with the given id if it belongs to the user and the tenant.
+     *
+     * @param id must not be {@literal null}.
+     * @param userId must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     * @return number of deleted entities
+     */
     @Modifying
-    @Query("DELETE FROM Role o WHERE o.id = ?1 AND o.user.id = ?2 AND o.groupId = ?#{authentication.tenantId}")
-    void deleteByIdAndUserId(String id, String userId);
+    @Transactional
+    @Query("DELETE FROM Role o WHERE o.id = ?1 AND o.user.id = ?2 AND o.groupId = ?3")
+    int deleteByIdAndUserIdAndGroupId(String id, String userId, String tenantId);
+
+    /**
+     * Deletes the named roles of all given users in one statement.
+     *
+     * @param userIds must not be {@literal null} or empty.
+     * @param roles role names, must not be {@literal null} or empty.
+     * @return number of deleted entities
+     */
+    @Transactional
+    default int deleteByUserIdInAndRoleIn(Collection<String> userIds, Collection<String> roles) {
+        return deleteByUserIdInAndRoleInAndGroupId(userIds, roles, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes the named roles of all given users of the tenant in one statement.
+     *
+     * @param userIds must not be {@literal null} or empty.
+     * @param roles role names, must not be {@literal null} or empty.
+     * @param tenantId must not be {@literal null}.
+     * @return number of deleted entities
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM Role o WHERE o.user.id IN ?1 AND o.role IN ?2 AND o.groupId = ?3")
+    int deleteByUserIdInAndRoleInAndGroupId(Collection<String> userIds, Collection<String> roles, String tenantId);
+
+    /**
+     * Returns which of the named roles the given users already have.
+     *
+     * @param userIds must not be {@literal null} or empty.
+     * @param roles role names, must not be {@literal null} or empty.
+     * @return pairs of user id and role name
+     */
+    @Query("SELECT o.user.id, o.role FROM Role o " +
+            "WHERE o.user.id IN ?1 AND o.role IN ?2")
+    List<Object[]> findUserRoles(Collection<String> userIds, Collection<String> roles);
 
     /**
      * Deletes all entities managed by the repository.
      */
     @Override
+    @Transactional
+    default void deleteAll() {
+        deleteByGroupId(TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes all entities of the tenant.
+     *
+     * @param tenantId must not be {@literal null}.
+     */
     @Modifying
-    @Query("DELETE FROM Role o WHERE o.groupId = ?#{authentication.tenantId}")
-    void deleteAll();
+    @Transactional
+    @Query("DELETE FROM Role o WHERE o.groupId = ?1")
+    void deleteByGroupId(String tenantId);
 
     /**
      * Retrieves an entity by its id.
@@ -94,7 +173,6 @@ public interface RoleRepository extends PagingAndSortingRepository<Role, String>
      * @throws IllegalArgumentException if {@code id} is {@literal null}.
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT o FROM Role o WHERE o.deleted = false AND o.id = ?1 AND o.groupId = ?#{authentication.tenantId}")
+    @Query("SELECT o FROM Role o WHERE o.deleted = false AND o.id = ?1")
     Optional<Role> findById(String id);
 }
\ No newline at end of file
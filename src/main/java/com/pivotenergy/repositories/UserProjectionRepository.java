@@ -0,0 +1,50 @@
+package com.pivotenergy.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+/**
+ * Sparse fieldset queries for {@link com.pivotenergy.domain.User}, implemented by {@link UserProjectionRepositoryImpl}
+ */
+public interface UserProjectionRepository {
+
+    /**
+     * Returns a slice of the requested properties of non deleted users of the tenant.
+     *
+     * @param tenantId must not be {@literal null}.
+     * @param fields requested properties, all selectable properties if empty.
+     * @param pageable page request, may only sort on selectable properties.
+     * @return slice of property maps
+     * @throws IllegalArgumentException if a requested or sort property is not selectable.
+     */
+    Slice<Map<String, Object>> findAllProjected(String tenantId, Collection<String> fields, Pageable pageable);
+
+    /**
+     * Retrieves the requested properties of a user by its id.
+     *
+     * @param tenantId must not be {@literal null}.
+     * @param id must not be {@literal null}.
+     * @param fields requested properties, all selectable properties if empty.
+     * @return property map or {@literal Optional#empty()} if none found
+     * @throws IllegalArgumentException if a requested property is not selectable.
+     */
+    Optional<Map<String, Object>> findProjectedById(String tenantId, String id, Collection<String> fields);
+
+    /**
+     * Streams the requested properties of all non deleted users of the tenant from a forward-only cursor.
+     * Must be called within a transaction which stays open while the consumer runs.
+     *
+     * @param tenantId must not be {@literal null}.
+     * @param fields requested properties, all selectable properties if empty.
+     * @param fetchSize rows fetched per round trip.
+     * @param consumer receives each row as a property map.
+     * @return number of rows streamed
+     * @throws IllegalArgumentException if a requested property is not selectable.
+     */
+    long streamProjected(String tenantId, Collection<String> fields, int fetchSize, Consumer<Map<String, Object>> consumer);
+}
@@ -0,0 +1,55 @@
+package com.pivotenergy.repositories;
+
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.transaction.annotation.Transactional;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Consumer;
+
+public class UserProjectionRepositoryImpl implements UserProjectionRepository {
+    /**
+     * password and association properties are never selectable
+     */
+    public static final FieldProjection PROJECTION = new FieldProjection("User",
+            "id", "email", "firstName", "lastName", "locale", "type", "enabled", "locked", "expired",
+            "failedLoginAttempts", "lastLoginAttempt", "groupId", "version", "createdAt", "createdBy", "updatedAt", "updatedBy");
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Override
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> findAllProjected(String tenantId, Collection<String> fields, Pageable pageable) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("tenantId", tenantId);
+
+        return PROJECTION.slice(entityManager, fields,
+                "o.deleted = false AND o.groupId = :tenantId", parameters, pageable);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public Optional<Map<String, Object>> findProjectedById(String tenantId, String id, Collection<String> fields) {
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("tenantId", tenantId);
+        parameters.put("id", id);
+
+        return PROJECTION.single(entityManager, fields,
+                "o.deleted = false AND o.id = :id AND o.groupId = :tenantId", parameters);
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public long streamProjected(String tenantId, Collection<String> fields, int fetchSize,
+                                Consumer<Map<String, Object>> consumer) {
+        return PROJECTION.scroll(entityManager, fields, "o.deleted = false AND o.groupId = :tenantId",
+                Collections.singletonMap("tenantId", tenantId), fetchSize, consumer);
+    }
+}
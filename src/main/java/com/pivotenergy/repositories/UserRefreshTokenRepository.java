@@ -1,6 +1,7 @@
 package com.pivotenergy.repositories;
 
 import com.pivotenergy.domain.UserRefreshToken;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
@@ -10,11 +11,41 @@ import javax.transaction.Transactional;
 import java.util.Optional;
 
 @Repository
-public interface UserRefreshTokenRepository extends PagingAndSortingRepository<UserRefreshToken, Long> {
+public interface UserRefreshTokenRepository extends PagingAndSortingRepository<UserRefreshToken, String> {
+    /**
+     * Retrieves a refresh token with its user, group and roles fetched, the session is built after the
+     * transaction ended.
+     *
+     * @param token refresh token
+     * @return the token or {@literal Optional#empty()} if none found
+     */
+    @EntityGraph(attributePaths = {"user", "user.group", "user.roles"})
     Optional<UserRefreshToken> findByToken(String token);
 
     @Transactional
     @Modifying
     @Query("DELETE FROM UserRefreshToken o WHERE o.expiresAt < CURRENT_TIMESTAMP")
     void purgeExpiredTokens();
+
+    /**
+     * Revokes all refresh tokens of a user.
+     *
+     * @param userId user id
+     * @return number of deleted tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UserRefreshToken o WHERE o.user.id = ?1")
+    int deleteByUserId(String userId);
+
+    /**
+     * Revokes all refresh tokens of the members of a group.
+     *
+     * @param groupId group id
+     * @return number of deleted tokens
+     */
+    @Transactional
+    @Modifying
+    @Query("DELETE FROM UserRefreshToken o WHERE o.groupId = ?1")
+    int deleteByGroupId(String groupId);
 }
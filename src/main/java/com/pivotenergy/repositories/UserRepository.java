@@ -20,20 +20,33 @@
 
 package com.pivotenergy.repositories;
 
+import com.pivotenergy.datasource.TenantFilter;
 import com.pivotenergy.domain.User;
+import com.pivotenergy.model.response.UserSummary;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.domain.Sort;
+import org.springframework.data.jpa.repository.EntityGraph;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.PagingAndSortingRepository;
 import org.springframework.stereotype.Repository;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
 import java.util.Optional;
 
+/**
+ * Queries are restricted to the tenant of the current user by the {@link TenantFilter}, which is only
+ * enabled inside a transaction, hence every method runs in one. Bulk statements do not see the filter
+ * and take the tenant as a parameter.
+ */
 @Repository
-public interface UserRepository extends PagingAndSortingRepository<User, String> {
+@Transactional(readOnly = true)
+public interface UserRepository extends PagingAndSortingRepository<User, String>, UserProjectionRepository {
 
     /**
      * Returns the number of entities available.
@@ -41,8 +54,7 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @return the number of entities
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT COUNT(o) FROM User o WHERE o.deleted = false AND o.groupId = ?#{authentication.tenantId}")
+    @Query("SELECT COUNT(o) FROM User o WHERE o.deleted = false")
     long count();
 
     /**
@@ -53,9 +65,8 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @throws IllegalArgumentException if {@code id} is {@literal null}.
      */
     @Override
-    @Transactional(readOnly = true)
     @Query("SELECT CASE WHEN COUNT(o) > 0 THEN true ELSE false END FROM User o " +
-            "WHERE o.deleted = false AND o.groupId = ?#{authentication.tenantId}")
+            "WHERE o.id = ?1 AND o.deleted = false")
     boolean existsById(String id);
 
     /**
@@ -65,28 +76,149 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @throws IllegalArgumentException in case the given {@code id} is {@literal null}
      */
     @Override
+    @Transactional
+    default void deleteById(String id) {
+        deleteByIdAndGroupId(id, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes the entity with the given id if it belongs to the tenant.
+     *
+     * @param id must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     */
     @Modifying
-    @Query("DELETE FROM User o WHERE o.id = ?1 AND o.groupId = ?#{authentication.tenantId}")
-    void deleteById(String id);
+    @Transactional
+    @Query("DELETE FROM User o WHERE o.id = ?1 AND o.groupId = ?2")
+    void deleteByIdAndGroupId(String id, String tenantId);
+
+    /**
+     * Deletes the entity with the given id if it belongs to the current tenant and is not soft deleted.
+     *
+     * @param id must not be {@literal null}.
+     * @return 1 if the entity was deleted, 0 if it does not exist or was soft deleted
+     */
+    @Transactional
+    default int hardDeleteById(String id) {
+        return hardDeleteByIdAndGroupId(id, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes the entity with the given id if it belongs to the tenant and is not soft deleted.
+     *
+     * @param id must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     * @return number of deleted entities
+     */
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM User o WHERE o.id = ?1 AND o.deleted = false AND o.groupId = ?2")
+    int hardDeleteByIdAndGroupId(String id, String tenantId);
 
     /**
      * Soft delete the entity with the given id by setting the deleted flag to true.
      *
      * @param id must not be {@literal null}.
+     * @return 1 if the entity was deleted, 0 if it does not exist or was deleted already
      * @throws IllegalArgumentException in case the given {@code id} is {@literal null}
      */
+    @Transactional
+    default int softDeleteById(String id) {
+        return softDeleteByIdAndGroupId(id, TenantFilter.currentTenant());
+    }
+
+    /**
+     * Soft delete the entity with the given id if it belongs to the tenant, the version is increased
+     * so cached representations become stale.
+     *
+     * @param id must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     * @return number of deleted entities
+     */
     @Modifying
-    @Transactional(readOnly = true)
-    @Query("UPDATE User o SET o.deleted = true WHERE o.id = ?1 AND o.groupId = ?#{authentication.tenantId}")
-    void softDeleteById(String id);
+    @Transactional
+    @Query("UPDATE User o SET o.deleted = true, o.deletedAt = CURRENT_TIMESTAMP, o.version = o.version + 1 " +
+            "WHERE o.id = ?1 AND o.deleted = false AND o.groupId = ?2")
+    int softDeleteByIdAndGroupId(String id, String tenantId);
+
+    /**
+     * Increases the version of users of the tenant whose roles changed, roles are part of the user
+     * representation and its ETag.
+     *
+     * @param ids must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     * @return number of updated users
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User o SET o.version = o.version + 1 WHERE o.id IN ?1 AND o.groupId = ?2")
+    int incrementVersions(Collection<String> ids, String tenantId);
+
+    /**
+     * Restores a soft deleted user of the tenant.
+     *
+     * @param id must not be {@literal null}.
+     * @param tenantId must not be {@literal null}.
+     * @return 1 if the user was restored, 0 if it does not exist or is not deleted
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User o SET o.deleted = false, o.deletedAt = NULL, o.version = o.version + 1 " +
+            "WHERE o.id = ?1 AND o.deleted = true AND o.groupId = ?2")
+    int restoreByIdAndGroupId(String id, String tenantId);
+
+    /**
+     * Restores the members of a group which were deleted together with it or later, members deleted
+     * before the group stay deleted.
+     *
+     * @param since when the group was deleted
+     * @param groupId must not be {@literal null}.
+     * @return number of restored users
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User o SET o.deleted = false, o.deletedAt = NULL, o.version = o.version + 1 " +
+            "WHERE o.deleted = true AND o.deletedAt >= ?1 AND o.groupId = ?2")
+    int restoreDeletedSinceByGroupId(Date since, String groupId);
+
+    /**
+     * Returns the users which were soft deleted before the given date across all tenants, for the archive job.
+     *
+     * @param before must not be {@literal null}.
+     * @param pageable limit, the sort is ignored.
+     * @return ids of the users deleted longest ago
+     */
+    @Query("SELECT o.id FROM User o WHERE o.deleted = true AND o.deletedAt < ?1 ORDER BY o.deletedAt")
+    List<String> findIdsDeletedBefore(Date before, Pageable pageable);
+
+    /**
+     * Returns the members of a group deleted together with it or later, see {@link #restoreDeletedSinceByGroupId}.
+     *
+     * @param groupId must not be {@literal null}.
+     * @param since when the group was deleted
+     * @return user ids
+     */
+    @Query("SELECT o.id FROM User o WHERE o.groupId = ?1 AND o.deleted = true AND o.deletedAt >= ?2")
+    List<String> findIdsDeletedSinceByGroupId(String groupId, Date since);
 
     /**
      * Deletes all entities managed by the repository.
      */
     @Override
+    @Transactional
+    default void deleteAll() {
+        deleteByGroupId(TenantFilter.currentTenant());
+    }
+
+    /**
+     * Deletes all entities of the tenant.
+     *
+     * @param tenantId must not be {@literal null}.
+     */
     @Modifying
-    @Query("DELETE FROM User o WHERE o.groupId = ?#{authentication.tenantId}")
-    void deleteAll();
+    @Transactional
+    @Query("DELETE FROM User o WHERE o.groupId = ?1")
+    void deleteByGroupId(String tenantId);
 
 
     /**
@@ -95,8 +227,7 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @return all entities
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.groupId  = ?#{authentication.tenantId}")
+    @Query("SELECT o FROM User o WHERE o.deleted = false")
     Iterable<User> findAll(Sort sort);
 
 
@@ -106,8 +237,7 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @return all entities
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.groupId  = ?#{authentication.tenantId}")
+    @Query("SELECT o FROM User o WHERE o.deleted = false")
     Iterable<User> findAll();
 
 
@@ -117,23 +247,117 @@ public interface UserRepository extends PagingAndSortingRepository<User, String>
      * @return all entities
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.groupId = ?#{authentication.tenantId}")
+    @Query("SELECT o FROM User o WHERE o.deleted = false")
     Page<User> findAll(Pageable pageable);
 
     /**
-     * Retrieves an entity by its id.
+     * Returns a slice of instances of the type without counting them, size + 1 rows are fetched
+     * to determine whether a next slice exists.
+     *
+     * @param pageable page request
+     * @return slice of entities
+     */
+    @Query("SELECT o FROM User o WHERE o.deleted = false")
+    Slice<User> findAllSliced(Pageable pageable);
+
+    /**
+     * Retrieves an entity by its id, group and roles are fetched in the same statement.
      *
      * @param id must not be {@literal null}.
      * @return the entity with the given id or {@literal Optional#empty()} if none found
      * @throws IllegalArgumentException if {@code id} is {@literal null}.
      */
     @Override
-    @Transactional(readOnly = true)
-    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.id = ?1 AND o.groupId = ?#{authentication.tenantId}")
+    @EntityGraph(attributePaths = {"group", "roles"})
+    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.id = ?1")
     Optional<User> findById(String id);
 
+    /**
+     * Retrieves only the version of an entity, used to answer conditional requests without loading it.
+     *
+     * @param id must not be {@literal null}.
+     * @return the version of the entity with the given id or {@literal Optional#empty()} if none found
+     */
+    @Query("SELECT o.version FROM User o WHERE o.deleted = false AND o.id = ?1")
+    Optional<Long> findVersionById(String id);
+
+
+    /**
+     * Returns which of the given ids belong to non deleted users of the tenant.
+     *
+     * @param ids must not be {@literal null}.
+     * @return the ids found
+     */
+    @Query("SELECT o.id FROM User o WHERE o.deleted = false AND o.id IN ?1")
+    List<String> findIdsByIdIn(Collection<String> ids);
+
+    /**
+     * Retrieves the non deleted users of the tenant with the given ids, group and roles are fetched in
+     * the same statement.
+     *
+     * @param ids must not be {@literal null}, callers keep it small enough for an IN clause.
+     * @return the users found, in no particular order
+     */
+    @EntityGraph(attributePaths = {"group", "roles"})
+    @Query("SELECT DISTINCT o FROM User o WHERE o.deleted = false AND o.id IN ?1")
+    List<User> findByIdIn(Collection<String> ids);
+
+
+    /**
+     * Returns the first users of a group ordered by id, group and id are covered by an index so the
+     * cost does not depend on the size of the group. Groups of other tenants are only visible through
+     * {@link TenantFilter#unfiltered}.
+     *
+     * @param groupId must not be {@literal null}.
+     * @param pageable limit, the sort is ignored.
+     * @return users of the group
+     */
+    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.groupId = ?1 ORDER BY o.id")
+    List<User> findByGroupId(String groupId, Pageable pageable);
+
+    /**
+     * Returns the users of a group following the given id ordered by id.
+     *
+     * @param groupId must not be {@literal null}.
+     * @param after id of the last user of the previous page.
+     * @param pageable limit, the sort is ignored.
+     * @return users of the group
+     */
+    @Query("SELECT o FROM User o WHERE o.deleted = false AND o.groupId = ?1 AND o.id > ?2 ORDER BY o.id")
+    List<User> findByGroupIdAfter(String groupId, String after, Pageable pageable);
+
+
+    /**
+     * Prefix search over email, first and last name of the users of a tenant.
+     *
+     * @param tenantId must not be {@literal null}.
+     * @param prefix LIKE pattern ending in %, with % and _ escaped by a backslash.
+     * @param pageable limit, the sort is ignored.
+     * @return matching users
+     */
+    @Query("SELECT new com.pivotenergy.model.response.UserSummary(o.id, o.email, o.firstName, o.lastName) " +
+            "FROM User o WHERE o.deleted = false AND o.groupId = ?1 " +
+            "AND (o.email LIKE ?2 ESCAPE '\\' OR o.firstName LIKE ?2 ESCAPE '\\' OR o.lastName LIKE ?2 ESCAPE '\\') " +
+            "ORDER BY o.email")
+    List<UserSummary> searchByPrefix(String tenantId, String prefix, Pageable pageable);
 
-    @Transactional(readOnly = true)
+
+    /**
+     * Retrieves a user for login with group and roles fetched, the session is built after the transaction ended.
+     *
+     * @param email must not be {@literal null}.
+     * @return the user or {@literal Optional#empty()} if none found
+     */
+    @EntityGraph(attributePaths = {"group", "roles"})
     Optional<User> findByEmail(String email);
+
+    /**
+     * Returns which of the given emails are taken. Emails are unique across tenants and include
+     * deleted users, so callers run the lookup through {@link TenantFilter#unfiltered}.
+     *
+     * @param emails emails to check
+     * @return the emails which already exist
+     */
+    @Query("SELECT o.email FROM User o WHERE o.email IN ?1")
+    List<String> findExistingEmails(Collection<String> emails);
 }
@@ -0,0 +1,34 @@
+package com.pivotenergy.resources;
+
+import com.pivotenergy.services.ChangeFeed;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+@RestController
+@RequestMapping("/changes")
+public class ChangeResource {
+    private static final String LAST_EVENT_ID = "Last-Event-ID";
+
+    private ChangeFeed changeFeed;
+
+    @Autowired
+    ChangeResource(ChangeFeed changeFeed) {
+        this.changeFeed = changeFeed;
+    }
+
+    /**
+     * Streams the changes of the current tenant. A reconnecting event source sends the id of the last
+     * event it received, other clients pass the sequence number to resume after explicitly.
+     */
+    @GetMapping(produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter stream(@RequestHeader(name = LAST_EVENT_ID, required = false) Long lastEventId,
+                             @RequestParam(name = "after", required = false) Long after) {
+        return changeFeed.subscribe(lastEventId != null ? lastEventId : after);
+    }
+}
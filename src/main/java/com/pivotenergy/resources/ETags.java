@@ -0,0 +1,91 @@
+package com.pivotenergy.resources;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Builds and compares entity tags derived from the entity version. Representations restricted
+ * with {@code fields=} get their own tag so a cached projection is never mistaken for the full entity.
+ */
+final class ETags {
+    private ETags() {
+    }
+
+    /**
+     * @param version entity version
+     * @return strong entity tag of the full representation
+     */
+    static String of(Long version) {
+        return "\"v" + version + "\"";
+    }
+
+    /**
+     * @param version entity version
+     * @param fields requested properties, the full representation if null or empty
+     * @return strong entity tag of the representation
+     */
+    static String of(Long version, Collection<String> fields) {
+        if (fields == null || fields.isEmpty()) {
+            return of(version);
+        }
+
+        Set<String> sorted = new TreeSet<>(fields);
+        return "\"v" + version + "-" + Integer.toHexString(sorted.hashCode()) + "\"";
+    }
+
+    /**
+     * Weak comparison as required for {@code If-None-Match}
+     *
+     * @param ifNoneMatch header value, may list several tags or be {@code *}
+     * @param etag current entity tag
+     * @return true if the client copy is current
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.equals("*") || strip(tag).equals(strip(etag))) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * @param ifMatch header value
+     * @return version the client based its change on or {@literal null} if no precondition was sent
+     * @throws IllegalArgumentException if the header does not carry a tag issued by this service
+     */
+    static Long version(String ifMatch) {
+        if (ifMatch == null || ifMatch.trim().equals("*")) {
+            return null;
+        }
+
+        String tag = strip(ifMatch.trim());
+        int end = tag.indexOf('-');
+        try {
+            if (tag.startsWith("v")) {
+                return Long.valueOf(tag.substring(1, end < 0 ? tag.length() : end));
+            }
+        }
+        catch (NumberFormatException ignore) {
+            // fall through
+        }
+
+        throw new IllegalArgumentException(String.format("Invalid If-Match header '%s'", ifMatch));
+    }
+
+    private static String strip(String tag) {
+        String value = tag.startsWith("W/") ? tag.substring(2) : tag;
+        if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+            return value.substring(1, value.length() - 1);
+        }
+
+        return value;
+    }
+}
@@ -2,60 +2,108 @@ package com.pivotenergy.resources;
 
 import com.pivotenergy.domain.Group;
 import com.pivotenergy.domain.User;
+import com.pivotenergy.model.request.UserImportRow;
+import com.pivotenergy.model.response.CursorPage;
+import com.pivotenergy.model.response.GroupView;
+import com.pivotenergy.model.response.UserView;
+import com.pivotenergy.services.ArchiveService;
+import com.pivotenergy.services.BulkFormat;
+import com.pivotenergy.services.ExportService;
 import com.pivotenergy.services.GroupService;
+import com.pivotenergy.services.ListMode;
+import com.pivotenergy.services.UserImportService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.io.InputStream;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/groups")
 public class GroupResource {
     private GroupService groupService;
+    private UserImportService userImportService;
+    private ExportService exportService;
+    private ArchiveService archiveService;
 
     @Autowired
-    GroupResource(GroupService groupService) {
+    GroupResource(GroupService groupService, UserImportService userImportService, ExportService exportService,
+                  ArchiveService archiveService) {
         this.groupService = groupService;
+        this.userImportService = userImportService;
+        this.exportService = exportService;
+        this.archiveService = archiveService;
     }
 
-    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ROLE_SUPPORT_CREATE_USER')")
     public @ResponseBody
-    Group create(@RequestBody Group group) {
-        return groupService.create(group);
+    GroupView create(@RequestBody Group group) {
+        return groupService.createView(group);
     }
 
-    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     @PreAuthorize("hasRole('ROLE_SUPPORT_READ_USER')")
     public @ResponseBody
-    Page<Group> getCollection(@PageableDefault Pageable pageable) {
-        return groupService.getRepository().findAll(pageable);
+    Slice<?> getCollection(@PageableDefault Pageable pageable,
+                           @RequestParam(name = "mode", defaultValue = "PAGE") ListMode mode,
+                           @RequestParam(name = "fields", required = false) Set<String> fields) {
+        if (fields != null && !fields.isEmpty()) {
+            return groupService.getCollection(pageable, mode, fields);
+        }
+
+        return groupService.getViewCollection(pageable, mode);
     }
 
-    @PutMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    @ResponseStatus(HttpStatus.ACCEPTED)
+    @GetMapping(path = "/export", produces = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    @PreAuthorize("hasRole('ROLE_SUPPORT_READ_USER')")
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(name = "format", defaultValue = "NDJSON") BulkFormat format,
+            @RequestParam(name = "fields", required = false) Set<String> fields) {
+        List<String> columns = exportService.groupColumns(fields);
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=groups." + format.name().toLowerCase())
+                .body(out -> exportService.exportGroups(columns, format, out));
+    }
+
+    @PutMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
-    public @ResponseBody
-    Group updateById(@PathVariable String id, @RequestBody Group group) throws Throwable {
-        return groupService.update(id, group);
+    public ResponseEntity<GroupView> updateById(@PathVariable String id, @RequestBody Group group,
+                                                @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws Throwable {
+        GroupView updated = groupService.updateView(id, group, ETags.version(ifMatch));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(ETags.of(updated.getVersion())).body(updated);
     }
 
-    @PatchMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    @ResponseStatus(HttpStatus.ACCEPTED)
-    public @ResponseBody
-    Group patchyId(@PathVariable String id, @RequestBody Map<String, Object> patch) throws Throwable {
-        return groupService.patch(id, patch);
+    @PatchMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    public ResponseEntity<GroupView> patchyId(@PathVariable String id, @RequestBody Map<String, Object> patch,
+                                              @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws Throwable {
+        GroupView patched = groupService.patchView(id, patch, ETags.version(ifMatch));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(ETags.of(patched.getVersion())).body(patched);
     }
 
     @DeleteMapping(path = "/{id}")
@@ -65,30 +113,99 @@ public class GroupResource {
         groupService.softDelete(id);
     }
 
-    @GetMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @PostMapping(path = "/{id}/restore", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
     public @ResponseBody
-    Group getById(@PathVariable String id) throws Throwable {
-        return groupService.getById(id);
+    GroupView restore(@PathVariable String id) throws Throwable {
+        archiveService.restoreGroup(id);
+        return groupService.getViewById(id);
+    }
+
+    @GetMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    public ResponseEntity<?> getById(@PathVariable String id,
+                                     @RequestParam(name = "fields", required = false) Set<String> fields,
+                                     @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws Throwable {
+        if (ifNoneMatch != null) {
+            // answered from the version column alone, the entity is not loaded for a cache hit
+            String etag = ETags.of(groupService.getVersion(id), fields);
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+
+        if (fields != null && !fields.isEmpty()) {
+            Set<String> selected = new LinkedHashSet<>(fields);
+            selected.add("version");
+            Map<String, Object> projection = groupService.getById(id, selected);
+            Long version = (Long) (fields.contains("version") ? projection.get("version") : projection.remove("version"));
+            return ResponseEntity.ok().eTag(ETags.of(version, fields)).body(projection);
+        }
+
+        GroupView group = groupService.getViewById(id);
+        return ResponseEntity.ok().eTag(ETags.of(group.getVersion())).body(group);
     }
 
 
     /*
      * USERS ENDPOINTS
      */
-    @PostMapping(path = "/{id}/users", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/{id}/users", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_READ_USER')")
+    public @ResponseBody
+    CursorPage<UserView> getUsers(@PathVariable String id,
+                              @RequestParam(name = "after", required = false) String after,
+                              @RequestParam(name = "size", defaultValue = "50") int size) {
+        return groupService.getUsers(id, after, size);
+    }
+
+    @PostMapping(path = "/{id}/users", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ROLE_SUPPORT_CREATE_USER')")
     public @ResponseBody
-    User addUser(@PathVariable String id, @RequestBody @Valid User user) throws Throwable {
+    UserView addUser(@PathVariable String id, @RequestBody @Valid User user) throws Throwable {
         return groupService.addUser(id, user);
     }
 
+    @PostMapping(path = "/{id}/users/bulk", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.CREATED)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_CREATE_USER')")
+    public @ResponseBody
+    List<String> addUsers(@PathVariable String id, @RequestBody List<UserImportRow> users) throws Throwable {
+        groupService.getById(id);
+        return userImportService.addUsers(id, users);
+    }
+
+    @PostMapping(path = "/{id}/users/import",
+            consumes = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE},
+            produces = BulkFormat.NDJSON_VALUE)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_CREATE_USER')")
+    public ResponseEntity<StreamingResponseBody> importUsers(@PathVariable String id,
+                                                             @RequestHeader(HttpHeaders.CONTENT_TYPE) String contentType,
+                                                             HttpServletRequest request) throws Throwable {
+        // resolved before streaming starts so an unknown group or format still gets a proper error status
+        groupService.getById(id);
+        BulkFormat format = BulkFormat.of(contentType);
+        InputStream body = request.getInputStream();
+
+        return ResponseEntity.ok()
+                .contentType(BulkFormat.NDJSON.getMediaType())
+                .body(out -> userImportService.importUsers(id, format, body, out));
+    }
+
 
     /*
      * METADATA ENDPOINTS
      */
-    @GetMapping(path = "/metadata/types", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/metadata/types", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
     List<Group.Type> getTypes() {
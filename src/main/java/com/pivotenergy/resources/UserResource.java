@@ -2,59 +2,120 @@ package com.pivotenergy.resources;
 
 import com.pivotenergy.domain.Role;
 import com.pivotenergy.domain.User;
+import com.pivotenergy.model.request.RoleBatchRequest;
+import com.pivotenergy.model.request.UserLookupRequest;
+import com.pivotenergy.model.response.RoleBatchResult;
+import com.pivotenergy.model.response.RoleView;
+import com.pivotenergy.model.response.UserLookupResult;
+import com.pivotenergy.model.response.UserSummary;
+import com.pivotenergy.model.response.UserView;
+import com.pivotenergy.services.ArchiveService;
+import com.pivotenergy.services.BulkFormat;
+import com.pivotenergy.services.ExportService;
+import com.pivotenergy.services.ListMode;
 import com.pivotenergy.services.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.web.PageableDefault;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import javax.validation.Valid;
 import java.util.Arrays;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 @RestController
 @RequestMapping("/users")
 public class UserResource {
     private UserService userService;
+    private ExportService exportService;
+    private ArchiveService archiveService;
 
     @Autowired
-    UserResource(UserService userService) {
+    UserResource(UserService userService, ExportService exportService, ArchiveService archiveService) {
         this.userService = userService;
+        this.exportService = exportService;
+        this.archiveService = archiveService;
     }
 
-    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @PostMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ROLE_SUPPORT_CREATE_USER')")
     public @ResponseBody
-    User create(@RequestBody User user) {
-        return userService.create(user);
+    UserView create(@RequestBody User user) {
+        return userService.createView(user);
     }
 
-    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
-    Page<User> getCollection(@PageableDefault Pageable pageable) {
-        return userService.getRepository().findAll(pageable);
+    Slice<?> getCollection(@PageableDefault Pageable pageable,
+                           @RequestParam(name = "mode", defaultValue = "PAGE") ListMode mode,
+                           @RequestParam(name = "fields", required = false) Set<String> fields) {
+        if (fields != null && !fields.isEmpty()) {
+            return userService.getCollection(pageable, mode, fields);
+        }
+
+        return userService.getViewCollection(pageable, mode);
     }
 
-    @PutMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    @ResponseStatus(HttpStatus.ACCEPTED)
-    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
+    @GetMapping(path = "/search", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
-    User updateById(@PathVariable String id, @RequestBody User user) throws Throwable {
-        return userService.update(id, user);
+    List<UserSummary> search(@RequestParam(name = "q") String query,
+                             @RequestParam(name = "limit", defaultValue = "20") int limit) {
+        return userService.search(query, limit);
     }
 
-    @PatchMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
-    @ResponseStatus(HttpStatus.ACCEPTED)
+    @PostMapping(path = "/lookup", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
-    User patchById(@PathVariable String id, @RequestBody Map<String, Object> patch) throws Throwable {
-        return userService.patch(id, patch);
+    UserLookupResult lookup(@RequestBody @Valid UserLookupRequest request) {
+        return userService.lookup(request.getIds());
+    }
+
+    @GetMapping(path = "/export", produces = {BulkFormat.NDJSON_VALUE, BulkFormat.CSV_VALUE})
+    public ResponseEntity<StreamingResponseBody> export(
+            @RequestParam(name = "format", defaultValue = "NDJSON") BulkFormat format,
+            @RequestParam(name = "fields", required = false) Set<String> fields) {
+        List<String> columns = exportService.userColumns(fields);
+
+        return ResponseEntity.ok()
+                .contentType(format.getMediaType())
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=users." + format.name().toLowerCase())
+                .body(out -> exportService.exportUsers(columns, format, out));
+    }
+
+    @PutMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
+    public ResponseEntity<UserView> updateById(@PathVariable String id, @RequestBody User user,
+                                               @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws Throwable {
+        UserView updated = userService.updateView(id, user, ETags.version(ifMatch));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(ETags.of(updated.getVersion())).body(updated);
+    }
+
+    @PatchMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    public ResponseEntity<UserView> patchById(@PathVariable String id, @RequestBody Map<String, Object> patch,
+                                             @RequestHeader(name = HttpHeaders.IF_MATCH, required = false) String ifMatch)
+            throws Throwable {
+        UserView patched = userService.patchView(id, patch, ETags.version(ifMatch));
+        return ResponseEntity.status(HttpStatus.ACCEPTED).eTag(ETags.of(patched.getVersion())).body(patched);
     }
 
     @DeleteMapping(path = "/{id}")
@@ -64,22 +125,52 @@ public class UserResource {
         userService.softDelete(id);
     }
 
-    @GetMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @PostMapping(path = "/{id}/restore", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
     public @ResponseBody
-    User getById(@PathVariable String id) throws Throwable {
-        return userService.getById(id);
+    UserView restore(@PathVariable String id) throws Throwable {
+        archiveService.restoreUser(id);
+        return userService.getViewById(id);
+    }
+
+    @GetMapping(path = "/{id}", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    public ResponseEntity<?> getById(@PathVariable String id,
+                                     @RequestParam(name = "fields", required = false) Set<String> fields,
+                                     @RequestHeader(name = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch)
+            throws Throwable {
+        if (ifNoneMatch != null) {
+            // answered from the version column alone, the entity is not loaded for a cache hit
+            String etag = ETags.of(userService.getVersion(id), fields);
+            if (ETags.matches(ifNoneMatch, etag)) {
+                return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+            }
+        }
+
+        if (fields != null && !fields.isEmpty()) {
+            Set<String> selected = new LinkedHashSet<>(fields);
+            selected.add("version");
+            Map<String, Object> projection = userService.getById(id, selected);
+            Long version = (Long) (fields.contains("version") ? projection.get("version") : projection.remove("version"));
+            return ResponseEntity.ok().eTag(ETags.of(version, fields)).body(projection);
+        }
+
+        UserView user = userService.getViewById(id);
+        return ResponseEntity.ok().eTag(ETags.of(user.getVersion())).body(user);
     }
 
 
     /*
      * ROLES ENDPOINTS
      */
-    @PostMapping(path = "/{id}/roles", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @PostMapping(path = "/{id}/roles", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.CREATED)
     @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
     public @ResponseBody
-    Role addRole(@PathVariable String id, @RequestBody @Valid Role role) throws Throwable {
+    RoleView addRole(@PathVariable String id, @RequestBody @Valid Role role) throws Throwable {
         return userService.addRole(id, role);
     }
 
@@ -90,32 +181,54 @@ public class UserResource {
         userService.deleteRole(id, roleId);
     }
 
+    @PostMapping(path = "/roles/grant", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
+    public @ResponseBody
+    RoleBatchResult grantRoles(@RequestBody @Valid RoleBatchRequest request) {
+        return userService.grantRoles(request);
+    }
+
+    @PostMapping(path = "/roles/revoke", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
+    @ResponseStatus(HttpStatus.OK)
+    @PreAuthorize("hasRole('ROLE_SUPPORT_UPDATE_USER')")
+    public @ResponseBody
+    RoleBatchResult revokeRoles(@RequestBody @Valid RoleBatchRequest request) {
+        return userService.revokeRoles(request);
+    }
+
 
     /*
      * METADATA ENDPOINTS
      */
-    @GetMapping(path = "/metadata/types", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/metadata/types", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
     List<User.Type> getTypes() {
         return Arrays.asList(User.Type.values());
     }
 
-    @GetMapping(path = "/metadata/roles/scopes", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/metadata/roles/scopes", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
     List<Role.Scope> getRoleScopes() {
         return Arrays.asList(Role.Scope.values());
     }
 
-    @GetMapping(path = "/metadata/roles/actions", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/metadata/roles/actions", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
     List<Role.Action> getRoleActions() {
         return Arrays.asList(Role.Action.values());
     }
 
-    @GetMapping(path = "/metadata/roles/targets", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE})
+    @GetMapping(path = "/metadata/roles/targets", produces = {MediaType.APPLICATION_JSON_VALUE, MediaType.APPLICATION_XML_VALUE,
+            BinaryFormats.SMILE_VALUE, BinaryFormats.CBOR_VALUE})
     @ResponseStatus(HttpStatus.OK)
     public @ResponseBody
     List<Role.Target> getRoleTargets() {
@@ -0,0 +1,54 @@
+package com.pivotenergy.services;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches entity counts per key (usually the tenant id) so that list requests
+ * in {@link ListMode#APPROXIMATE} mode do not run a count query every time.
+ * Counts are only refreshed when they expire.
+ */
+class ApproximateCounter {
+    private static final int MAX_KEYS = 1024;
+
+    private final long ttlMillis;
+    private final Map<String, Count> counts = new ConcurrentHashMap<>();
+
+    ApproximateCounter(Duration ttl) {
+        this.ttlMillis = ttl.toMillis();
+    }
+
+    /**
+     * Returns the cached count for the key or runs the counter if the cached value has expired
+     *
+     * @param key cache key
+     * @param counter the exact count query
+     * @return the possibly stale count
+     */
+    long count(String key, LongSupplier counter) {
+        long now = System.currentTimeMillis();
+        Count cached = counts.get(key);
+        if (cached != null && now - cached.countedAt < ttlMillis) {
+            return cached.value;
+        }
+
+        long value = counter.getAsLong();
+        if (counts.size() >= MAX_KEYS) {
+            counts.clear();
+        }
+        counts.put(key, new Count(value, now));
+        return value;
+    }
+
+    private static final class Count {
+        private final long value;
+        private final long countedAt;
+
+        private Count(long value, long countedAt) {
+            this.value = value;
+            this.countedAt = countedAt;
+        }
+    }
+}
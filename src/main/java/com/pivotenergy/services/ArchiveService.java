@@ -0,0 +1,272 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.datasource.TenantFilter;
+import com.pivotenergy.domain.ChangeEvent;
+import com.pivotenergy.domain.Group;
+import com.pivotenergy.domain.Role;
+import com.pivotenergy.domain.User;
+import com.pivotenergy.domain.UserRefreshToken;
+import com.pivotenergy.exceptions.PivotEntityNotFoundException;
+import com.pivotenergy.exceptions.PivotInvalidRequestException;
+import com.pivotenergy.repositories.GroupRepository;
+import com.pivotenergy.repositories.UserRepository;
+import org.hibernate.query.NativeQuery;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.persistence.Query;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Moves users and groups which have been soft deleted for longer than the retention period out of the
+ * hot tables into archive tables of the same shape, so queries and indexes of the hot tables only cover
+ * live rows and the few recently deleted ones.
+ *
+ * Rows are moved with INSERT ... SELECT and DELETE in batches of ids, one transaction per batch, the
+ * rows of a batch are locked first so concurrent runs on other instances skip them. Users are moved
+ * with their roles, refresh tokens were revoked when the user was deleted and any left are dropped.
+ * Groups are moved once none of their members remain in the user table.
+ *
+ * Support restores a user or a group from either place, see {@link #restoreUser} and {@link #restoreGroup}.
+ */
+@Service
+public class ArchiveService {
+    private static final Logger LOG = LoggerFactory.getLogger(ArchiveService.class);
+
+    private static final String GROUP_COLUMNS = "id, created_at, created_by, updated_at, updated_by, deleted, " +
+            "name, logo_image, company_name, company_website, contact_email, phone_number, type, version, deleted_at";
+    private static final String USER_COLUMNS = "id, created_at, created_by, updated_at, updated_by, deleted, " +
+            "group_id, locale, email, first_name, last_name, type, enabled, locked, expired, " +
+            "failed_login_attempts, last_login_attempt, password, version, deleted_at";
+    private static final String ROLE_COLUMNS = "id, created_at, created_by, updated_at, updated_by, deleted, " +
+            "group_id, role, scope, action, target, user_id";
+
+    private final UserRepository userRepository;
+    private final GroupRepository groupRepository;
+    private final SecondLevelCache secondLevelCache;
+    private final UserSearchIndex searchIndex;
+    private final UserLookupCache lookupCache;
+    private final Outbox outbox;
+    private final TransactionTemplate transactionTemplate;
+    private final int retentionDays;
+    private final int batchSize;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    ArchiveService(UserRepository userRepository, GroupRepository groupRepository,
+                   SecondLevelCache secondLevelCache, UserSearchIndex searchIndex, UserLookupCache lookupCache,
+                   Outbox outbox, PlatformTransactionManager transactionManager,
+                   @Value("${pivot.archive.retention-days:30}") int retentionDays,
+                   @Value("${pivot.archive.batch-size:500}") int batchSize) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.secondLevelCache = secondLevelCache;
+        this.searchIndex = searchIndex;
+        this.lookupCache = lookupCache;
+        this.outbox = outbox;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.retentionDays = retentionDays;
+        this.batchSize = batchSize;
+    }
+
+    @Scheduled(cron = "${pivot.archive.cron:0 30 3 * * *}")
+    public void archive() {
+        archive(Date.from(Instant.now().minus(Duration.ofDays(retentionDays))));
+    }
+
+    /**
+     * Archives the users and then the groups deleted before the given date
+     *
+     * @param before deletion date up to which rows are archived
+     */
+    public void archive(Date before) {
+        int users = 0;
+        int moved;
+        do {
+            moved = transactionTemplate.execute(status -> archiveUsers(before));
+            users += moved;
+        } while (moved == batchSize);
+
+        int groups = 0;
+        do {
+            moved = transactionTemplate.execute(status -> archiveGroups(before));
+            groups += moved;
+        } while (moved == batchSize);
+
+        LOG.info("Archived {} users and {} groups deleted before {}", users, groups, before);
+    }
+
+    /**
+     * Restores a deleted user of the current tenant, from the archive if it was archived already
+     *
+     * @param id user id
+     * @throws PivotEntityNotFoundException if there is no deleted user with the id in the tenant
+     * @throws PivotInvalidRequestException if the email was taken by another user in the meantime
+     */
+    @Transactional
+    public void restoreUser(String id) {
+        String tenantId = TenantFilter.currentTenant();
+        List<String> archived = lockedIds(
+                "SELECT id FROM user_archive WHERE id IN (:ids) AND group_id = :groupId FOR UPDATE",
+                Collections.singletonList(id), tenantId, null);
+        if (!archived.isEmpty()) {
+            checkEmails(archived);
+            moveUsers("user_archive", "user", "role_archive", "role", archived, false);
+        }
+
+        if (userRepository.restoreByIdAndGroupId(id, tenantId) == 0) {
+            throw new PivotEntityNotFoundException(User.class, id);
+        }
+
+        restored(tenantId, Collections.singletonList(id));
+    }
+
+    /**
+     * Restores a deleted group together with the members which were deleted with it or later, from
+     * the archive if they were archived already. Members deleted before the group stay deleted.
+     *
+     * @param id group id
+     * @throws PivotEntityNotFoundException if there is no deleted group with the id
+     * @throws PivotInvalidRequestException if the email of a member was taken in the meantime
+     */
+    @Transactional
+    public void restoreGroup(String id) {
+        if (!lockedIds("SELECT id FROM user_group_archive WHERE id IN (:ids) FOR UPDATE",
+                Collections.singletonList(id), null, null).isEmpty()) {
+            move("user_group_archive", "user_group", GROUP_COLUMNS, "id", Collections.singletonList(id), false,
+                    Group.class);
+        }
+
+        Date since = groupRepository.findDeletedAtById(id)
+                .orElseThrow(new PivotEntityNotFoundException(Group.class, id));
+
+        List<String> archived = lockedIds(
+                "SELECT id FROM user_archive WHERE group_id = :groupId AND deleted_at >= :since FOR UPDATE",
+                null, id, since);
+        if (!archived.isEmpty()) {
+            checkEmails(archived);
+            moveUsers("user_archive", "user", "role_archive", "role", archived, false);
+        }
+
+        // support restores groups of any tenant
+        List<String> members = TenantFilter.unfiltered(entityManager,
+                () -> userRepository.findIdsDeletedSinceByGroupId(id, since));
+        groupRepository.restoreById(id);
+        userRepository.restoreDeletedSinceByGroupId(since, id);
+
+        secondLevelCache.evictGroup(id);
+        outbox.record(id, ChangeEvent.Type.GROUP, id, ChangeEvent.Operation.CREATED);
+        restored(id, members);
+    }
+
+    private int archiveUsers(Date before) {
+        List<String> candidates = TenantFilter.unfiltered(entityManager,
+                () -> userRepository.findIdsDeletedBefore(before, PageRequest.of(0, batchSize)));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        // rows restored or archived by another instance since they were selected are skipped
+        List<String> ids = lockedIds("SELECT id FROM user WHERE id IN (:ids) AND deleted = true FOR UPDATE",
+                candidates, null, null);
+        if (!ids.isEmpty()) {
+            update("DELETE FROM user_refresh_token WHERE user_id IN (:ids)", ids, UserRefreshToken.class);
+            moveUsers("user", "user_archive", "role", "role_archive", ids, true);
+        }
+        return candidates.size();
+    }
+
+    private int archiveGroups(Date before) {
+        List<String> candidates = groupRepository.findIdsDeletedBefore(before, PageRequest.of(0, batchSize));
+        if (candidates.isEmpty()) {
+            return 0;
+        }
+
+        List<String> ids = lockedIds("SELECT id FROM user_group WHERE id IN (:ids) AND deleted = true " +
+                "AND NOT EXISTS (SELECT u.id FROM user u WHERE u.group_id = user_group.id) FOR UPDATE", candidates, null, null);
+        if (!ids.isEmpty()) {
+            move("user_group", "user_group_archive", GROUP_COLUMNS, "id", ids, true, Group.class);
+            ids.forEach(secondLevelCache::evictGroup);
+        }
+        return candidates.size();
+    }
+
+    /**
+     * Moves users and their roles, roles are inserted after and deleted before their users to satisfy
+     * the foreign key of the hot table in both directions
+     */
+    private void moveUsers(String userFrom, String userTo, String roleFrom, String roleTo,
+                           List<String> ids, boolean archiving) {
+        if (archiving) {
+            move(roleFrom, roleTo, ROLE_COLUMNS, "user_id", ids, true, Role.class);
+            move(userFrom, userTo, USER_COLUMNS, "id", ids, true, User.class);
+        } else {
+            move(userFrom, userTo, USER_COLUMNS, "id", ids, false, User.class);
+            move(roleFrom, roleTo, ROLE_COLUMNS, "user_id", ids, false, Role.class);
+        }
+    }
+
+    private void move(String from, String to, String columns, String key, List<String> ids, boolean archiving,
+                      Class<?> entity) {
+        update(String.format("INSERT INTO %s (%s) SELECT %s FROM %s WHERE %s IN (:ids)",
+                to, archiving ? columns + ", archived_at" : columns,
+                archiving ? columns + ", CURRENT_TIMESTAMP" : columns, from, key), ids, entity);
+        update(String.format("DELETE FROM %s WHERE %s IN (:ids)", from, key), ids, entity);
+    }
+
+    private void update(String sql, List<String> ids, Class<?> entity) {
+        entityManager.createNativeQuery(sql)
+                .setParameter("ids", ids)
+                .unwrap(NativeQuery.class)
+                // only the regions of the entity are invalidated, not the whole second level cache
+                .addSynchronizedEntityClass(entity)
+                .executeUpdate();
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<String> lockedIds(String sql, Collection<String> ids, String groupId, Date since) {
+        Query query = entityManager.createNativeQuery(sql);
+        Optional.ofNullable(ids).ifPresent(value -> query.setParameter("ids", value));
+        Optional.ofNullable(groupId).ifPresent(value -> query.setParameter("groupId", value));
+        Optional.ofNullable(since).ifPresent(value -> query.setParameter("since", value));
+        return new ArrayList<>((List<String>) query.getResultList());
+    }
+
+    @SuppressWarnings("unchecked")
+    private void checkEmails(List<String> archived) {
+        List<String> emails = entityManager.createNativeQuery("SELECT email FROM user_archive WHERE id IN (:ids)")
+                .setParameter("ids", archived)
+                .getResultList();
+        // emails are unique across tenants and deleted users
+        List<String> taken = TenantFilter.unfiltered(entityManager, () -> userRepository.findExistingEmails(emails));
+        if (!taken.isEmpty()) {
+            throw new PivotInvalidRequestException("Email Already Taken", String.format(
+                    "Users cannot be restored, emails taken in the meantime: %s", String.join(",", taken)));
+        }
+    }
+
+    private void restored(String tenantId, List<String> ids) {
+        searchIndex.invalidate(tenantId);
+        lookupCache.invalidate(tenantId);
+        ids.forEach(id -> outbox.record(tenantId, ChangeEvent.Type.USER, id, ChangeEvent.Operation.CREATED));
+    }
+}
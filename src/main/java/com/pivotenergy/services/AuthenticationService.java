@@ -1,6 +1,7 @@
 package com.pivotenergy.services;
 
 import com.auth0.jwt.JWTCreator;
+import com.pivotenergy.datasource.TenantFilter;
 import com.pivotenergy.domain.User;
 import com.pivotenergy.domain.UserRefreshToken;
 import com.pivotenergy.exceptions.PivotAuthenticationFailureException;
@@ -20,6 +21,8 @@ import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 import java.nio.charset.StandardCharsets;
 import java.time.*;
 import java.util.Base64;
@@ -38,6 +41,9 @@ public class AuthenticationService {
     private PasswordEncoder passwordEncoder;
     private JWTSecurityService jwtSecurityService;
 
+    @PersistenceContext
+    private EntityManager entityManager;
+
     private static final long REFRESH_TOKEN_LIFE = Duration.ofHours(48).toMillis();
 
     /**
@@ -83,15 +89,20 @@ public class AuthenticationService {
     }
 
     /**
+     * The user is looked up before there is a session, across all tenants
      *
      * @param userLogin username password wrapper
      * @return TokenPair
      */
     public TokenPair loginUser(UserLogin userLogin) {
+        return TenantFilter.unfiltered(entityManager, () -> checkAndLoginUser(userLogin));
+    }
+
+    private TokenPair checkAndLoginUser(UserLogin userLogin) {
         return userRepository.findByEmail(userLogin.getEmail())
                 .map(user -> {
 
-                    if(user.getGroup().getDeleted().equals(Boolean.TRUE)) {
+                    if(Boolean.TRUE.equals(user.getDeleted()) || user.getGroup().getDeleted().equals(Boolean.TRUE)) {
                         throw new PivotEntityNotFoundException(User.class, user.getId());
                     }
 
@@ -113,7 +124,7 @@ public class AuthenticationService {
 
     private TokenPair doLoginUser(User user) {
 
-        if(user.getGroup().getDeleted().equals(Boolean.TRUE)) {
+        if(Boolean.TRUE.equals(user.getDeleted()) || user.getGroup().getDeleted().equals(Boolean.TRUE)) {
             throw new PivotEntityNotFoundException(User.class, user.getId());
         }
 
@@ -146,11 +157,12 @@ public class AuthenticationService {
      * @return newly generated access token or nothing, if the refresh token is not valid
      */
     public Optional<TokenPair> refreshAccessToken(final String refreshToken) {
-        return userRefreshTokenRepository.findByToken(refreshToken)
+        // the token is looked up before there is a session, across all tenants
+        return TenantFilter.unfiltered(entityManager, () -> userRefreshTokenRepository.findByToken(refreshToken)
                 .map(userRefreshToken -> {
                     logoutUser(refreshToken);
                     return doLoginUser(userRefreshToken.getUser());
-                });
+                }));
     }
 
     private String createRefreshToken(User user) {
@@ -212,7 +224,7 @@ public class AuthenticationService {
      */
     @Transactional
     public void logoutUser(String refreshToken) {
-        userRefreshTokenRepository.findByToken(refreshToken)
+        TenantFilter.unfiltered(entityManager, () -> userRefreshTokenRepository.findByToken(refreshToken))
                 .ifPresent(userRefreshTokenRepository::delete);
     }
 
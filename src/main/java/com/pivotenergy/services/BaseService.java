@@ -1,27 +1,74 @@
 package com.pivotenergy.services;
 
+import com.pivotenergy.datasource.ReplicaRoutingDataSource;
+import com.pivotenergy.datasource.TenantFilter;
 import com.pivotenergy.domain.BaseDomainEntity;
+import com.pivotenergy.domain.Versioned;
 import com.pivotenergy.exceptions.PivotEntityNotFoundException;
 import com.pivotenergy.exceptions.PivotInvalidRequestException;
+import com.pivotenergy.exceptions.PivotPreconditionFailedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.domain.PageImpl;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.repository.PagingAndSortingRepository;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.time.Duration;
 import java.util.Map;
+import java.util.Optional;
 
-public abstract class BaseService<T extends BaseDomainEntity, R extends PagingAndSortingRepository> {
+/**
+ * CRUD operations of an entity type. Methods handing results to the web layer return immutable views
+ * assembled inside the transaction, open-session-in-view is disabled and a response is written after
+ * the connection went back to the pool.
+ *
+ * @param <T> entity type
+ * @param <V> view type
+ * @param <R> repository type
+ */
+public abstract class BaseService<T extends BaseDomainEntity & Versioned, V, R extends PagingAndSortingRepository> {
     @SuppressWarnings("WeakerAccess")
     protected Logger LOG = LoggerFactory.getLogger(GroupService.class);
     @SuppressWarnings("WeakerAccess")
     protected R repository;
     private Class<T> clazz;
+    private final ApproximateCounter approximateCounter = new ApproximateCounter(Duration.ofMinutes(1));
+    private final SingleFlight<V> viewReads = new SingleFlight<>();
+    private TransactionTemplate readTransaction;
+    private TransactionTemplate writeTransaction;
+    private ReplicaRoutingDataSource replicaRouting;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     BaseService(Class<T> clazz, R repository) {
         this.clazz = clazz;
         this.repository = repository;
     }
 
+    @Autowired
+    void setTransactionManager(PlatformTransactionManager transactionManager) {
+        this.readTransaction = new TransactionTemplate(transactionManager);
+        this.readTransaction.setReadOnly(true);
+        this.writeTransaction = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * @param replicaRouting routing of read-only transactions, only present when a replica is configured
+     */
+    @Autowired(required = false)
+    void setReplicaRouting(ReplicaRoutingDataSource replicaRouting) {
+        this.replicaRouting = replicaRouting;
+    }
+
     public R getRepository() {
         return repository;
     }
@@ -32,16 +79,171 @@ public abstract class BaseService<T extends BaseDomainEntity, R extends PagingAn
         return clazz.cast(repository.findById(id).orElseThrow(new PivotEntityNotFoundException(clazz, id)));
     }
 
+    /**
+     * Concurrent reads of the same entity by callers of the same tenant share one query, views are
+     * immutable and safe to hand to several requests. A read joining a query which started before a
+     * concurrent write committed sees the state before the write, as any read running at that time would.
+     *
+     * Only the caller running the query opens a transaction, callers waiting for its result hold no
+     * connection.
+     *
+     * A caller sticky to the primary after a write runs its own query, a shared read may have gone to a
+     * replica which has not applied the write yet and would hand out the previous version.
+     *
+     * @param id entity id
+     * @return view of the entity
+     */
+    public V getViewById(String id) throws Throwable {
+        SingleFlight.Call<V> read = () -> readTransaction.execute(status -> undeclared(() -> view(getById(id))));
+        try {
+            return isCallerSticky() ? read.call() : viewReads.execute(viewKey(id), read);
+        }
+        catch (UndeclaredThrowableException e) {
+            throw e.getUndeclaredThrowable();
+        }
+    }
+
+    /**
+     * Runs work in a transaction opened only now, so whatever the caller did before, such as hashing
+     * a password, never holds a connection
+     *
+     * @param work work to run
+     * @return result of the work
+     */
+    <X> X inWriteTransaction(Work<X> work) throws Throwable {
+        try {
+            return writeTransaction.execute(status -> undeclared(work));
+        }
+        catch (UndeclaredThrowableException e) {
+            throw e.getUndeclaredThrowable();
+        }
+    }
+
+    private static <X> X undeclared(Work<X> work) {
+        try {
+            return work.run();
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new UndeclaredThrowableException(t);
+        }
+    }
+
+    private boolean isCallerSticky() {
+        return replicaRouting != null && replicaRouting.isCallerSticky();
+    }
+
+    /**
+     * @param id entity id
+     * @return key of identical view reads, by tenant, type and id
+     */
+    private String viewKey(String id) {
+        return TenantFilter.tenantOrNull() + "/" + clazz.getSimpleName() + "/" + id;
+    }
+
+    /**
+     * Returns a collection of views in the requested list mode
+     *
+     * @param pageable page request
+     * @param mode list mode, see {@link #getCollection(Pageable, ListMode)}
+     * @return Page or Slice of views
+     */
+    @Transactional(readOnly = true)
+    public Slice<V> getViewCollection(Pageable pageable, ListMode mode) {
+        return getCollection(pageable, mode).map(this::view);
+    }
+
+    /**
+     * Returns a collection of entities in the requested list mode
+     *
+     * @param pageable page request
+     * @param mode PAGE runs an exact count, SLICE skips counting, APPROXIMATE uses a cached count
+     * @return Page or Slice of entities
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional(readOnly = true)
+    public Slice<T> getCollection(Pageable pageable, ListMode mode) {
+        if (mode == ListMode.PAGE) {
+            return repository.findAll(pageable);
+        }
+
+        return withTotal(findSlice(pageable), pageable, mode);
+    }
+
+    /**
+     * Adds the total required by the list mode to a slice
+     *
+     * @param slice slice fetched without counting
+     * @param pageable page request of the slice
+     * @param mode list mode
+     * @param <X> content type
+     * @return the slice itself in SLICE mode, otherwise a page with an exact or approximate total
+     */
+    <X> Slice<X> withTotal(Slice<X> slice, Pageable pageable, ListMode mode) {
+        if (mode == ListMode.SLICE) {
+            return slice;
+        }
+
+        long total = mode == ListMode.APPROXIMATE
+                ? approximateCounter.count(countKey(), repository::count)
+                : repository.count();
+        // never report fewer elements than the slice has proven to exist
+        long seen = pageable.getOffset() + slice.getNumberOfElements() + (slice.hasNext() ? 1 : 0);
+        return new PageImpl<>(slice.getContent(), pageable, Math.max(seen, total));
+    }
+
     @Transactional
     public T create(T entity) {
         return clazz.cast(repository.save(entity));
     }
 
+    /**
+     * Creates an entity, {@link #prepare(BaseDomainEntity)} runs before the transaction opens
+     *
+     * @param entity new entity
+     * @return view of the created entity
+     */
+    public V createView(T entity) {
+        T prepared = prepare(entity);
+        return writeTransaction.execute(status -> view(create(prepared)));
+    }
+
+    /**
+     * Returns the current version of an entity without loading it
+     *
+     * @param id entity id
+     * @return version
+     */
+    @Transactional(readOnly = true)
+    public Long getVersion(String id) {
+        return findVersion(id).orElseThrow(new PivotEntityNotFoundException(clazz, id));
+    }
+
     @Transactional
     public T update(String id, T update) throws Throwable {
+        return update(id, update, null);
+    }
+
+    /**
+     * Replaces an entity
+     *
+     * @param id entity id
+     * @param update replacement
+     * @param expectedVersion version the caller based the update on, not checked if {@literal null}
+     * @return updated entity
+     */
+    @SuppressWarnings("unchecked")
+    @Transactional
+    public T update(String id, T update, Long expectedVersion) throws Throwable {
         T entity = getById(id);
+        checkVersion(entity, expectedVersion);
 
         if(entity.getId().equals(update.getId())) {
+            // the version of the request body is irrelevant, the merge is checked against the loaded entity
+            update.setVersion(entity.getVersion());
+            retain(entity, update);
             return clazz.cast(repository.save(update));
         }
 
@@ -50,12 +252,110 @@ public abstract class BaseService<T extends BaseDomainEntity, R extends PagingAn
         throw new PivotInvalidRequestException("Invalid Identifiers Provided", message);
     }
 
+    /**
+     * Replaces an entity
+     *
+     * @param id entity id
+     * @param update replacement
+     * @param expectedVersion version the caller based the update on, not checked if {@literal null}
+     * @return view of the updated entity
+     */
+    public V updateView(String id, T update, Long expectedVersion) throws Throwable {
+        T prepared = prepare(update);
+        return inWriteTransaction(() -> flushedView(update(id, prepared, expectedVersion)));
+    }
+
+    /**
+     * Applies a patch
+     *
+     * @param id entity id
+     * @param patch properties to change
+     * @param expectedVersion version the caller based the patch on, not checked if {@literal null}
+     * @return view of the patched entity
+     */
+    @Transactional
+    public V patchView(String id, Map<String, Object> patch, Long expectedVersion) throws Throwable {
+        return flushedView(patch(id, patch, expectedVersion));
+    }
+
+    /**
+     * The version is incremented when the change is flushed, a view assembled before would carry the
+     * previous version and its ETag would fail the next {@code If-Match}
+     *
+     * @param entity changed entity
+     * @return view of the entity as it will be committed
+     */
+    V flushedView(T entity) {
+        entityManager.flush();
+        return view(entity);
+    }
+
+    /**
+     * @param entity loaded entity
+     * @param expectedVersion version the caller expects, not checked if {@literal null}
+     * @throws PivotPreconditionFailedException if the entity has been modified since
+     */
+    void checkVersion(T entity, Long expectedVersion) {
+        if (expectedVersion != null && !expectedVersion.equals(entity.getVersion())) {
+            throw new PivotPreconditionFailedException(clazz, entity.getId(), expectedVersion, entity.getVersion());
+        }
+    }
+
+    /**
+     * Prepares an entity about to be created or replaced, before any transaction is open. Nothing by default.
+     *
+     * @param entity new entity or replacement
+     * @return the prepared entity
+     */
+    T prepare(T entity) {
+        return entity;
+    }
+
+    /**
+     * Copies state a replacement does not carry from the loaded entity, nothing by default
+     *
+     * @param entity loaded entity
+     * @param update replacement about to be saved
+     */
+    void retain(T entity, T update) {
+    }
+
+    /**
+     * Assembles the view of an entity, called while its transaction is still open
+     *
+     * @param entity managed entity
+     * @return view
+     */
+    abstract V view(T entity);
+
+    /**
+     * @param pageable page request
+     * @return has-next only slice, without running a count query
+     */
+    abstract Slice<T> findSlice(Pageable pageable);
+
+    /**
+     * @param id entity id
+     * @return version of the entity or {@literal Optional#empty()} if none found
+     */
+    abstract Optional<Long> findVersion(String id);
+
+    /**
+     * @return key under which the approximate count of the current caller is cached
+     */
+    abstract String countKey();
+
     @SuppressWarnings("unused")
-    abstract T patch(String id, Map<String, Object> patch) throws Throwable;
+    abstract T patch(String id, Map<String, Object> patch, Long expectedVersion) throws Throwable;
 
     @SuppressWarnings("unused")
     abstract void softDelete(String id);
 
     @SuppressWarnings("unused")
     abstract void hardDelete(String id);
+
+    @FunctionalInterface
+    interface Work<X> {
+        X run() throws Throwable;
+    }
 }
@@ -0,0 +1,48 @@
+package com.pivotenergy.services;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Wire formats of the bulk endpoints.
+ */
+public enum BulkFormat {
+    /**
+     * One JSON document per line
+     */
+    NDJSON(MediaType.valueOf("application/x-ndjson")),
+
+    /**
+     * Comma separated values with a header row
+     */
+    CSV(MediaType.valueOf("text/csv"));
+
+    public static final String NDJSON_VALUE = "application/x-ndjson";
+    public static final String CSV_VALUE = "text/csv";
+
+    private final MediaType mediaType;
+
+    BulkFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    /**
+     * @param contentType content type header value
+     * @return matching format
+     * @throws IllegalArgumentException if the content type is not a bulk format
+     */
+    public static BulkFormat of(String contentType) {
+        MediaType type = MediaType.parseMediaType(contentType);
+        for (BulkFormat format : values()) {
+            if (format.mediaType.isCompatibleWith(type)) {
+                return format;
+            }
+        }
+
+        throw new IllegalArgumentException(String.format("Unsupported bulk format '%s', expected %s or %s",
+                contentType, NDJSON_VALUE, CSV_VALUE));
+    }
+}
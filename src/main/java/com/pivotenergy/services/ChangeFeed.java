@@ -0,0 +1,152 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.datasource.TenantFilter;
+import com.pivotenergy.model.response.ChangeView;
+import com.pivotenergy.repositories.ChangeEventRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Streams the changes of a tenant to its subscribers as server-sent events, so other services keep
+ * local replicas up to date instead of polling the collections.
+ *
+ * The relay numbers the events committed to the {@link Outbox} and then reads them once per tenant
+ * with subscribers on this instance, starting at the subscriber furthest behind. The sequence number
+ * is the id of each event: a consumer reconnecting with {@code Last-Event-ID} continues after the last
+ * event it received, on any instance.
+ */
+@Component
+public class ChangeFeed {
+    private static final Logger LOG = LoggerFactory.getLogger(ChangeFeed.class);
+
+    private final Outbox outbox;
+    private final ChangeEventRepository repository;
+    private final int batchSize;
+    private final long streamTimeout;
+    private final int retentionDays;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    @Autowired
+    ChangeFeed(Outbox outbox, ChangeEventRepository repository,
+               @Value("${pivot.changes.batch-size:500}") int batchSize,
+               @Value("${pivot.changes.stream-timeout:300000}") long streamTimeout,
+               @Value("${pivot.changes.retention-days:7}") int retentionDays) {
+        this.outbox = outbox;
+        this.repository = repository;
+        this.batchSize = batchSize;
+        this.streamTimeout = streamTimeout;
+        this.retentionDays = retentionDays;
+    }
+
+    /**
+     * Subscribes to the changes of the current tenant
+     *
+     * @param after sequence number of the last event the caller has seen, {@literal null} for changes
+     *              from now on
+     * @return emitter receiving the events
+     */
+    public SseEmitter subscribe(Long after) {
+        String tenantId = TenantFilter.currentTenant();
+        long offset = after != null ? after : repository.findLastSequenceNumber().orElse(0L);
+
+        SseEmitter emitter = new SseEmitter(streamTimeout);
+        Subscriber subscriber = new Subscriber(tenantId, emitter, offset);
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onError(e -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        return emitter;
+    }
+
+    /**
+     * Numbers the committed events and sends them to the subscribers of this instance
+     */
+    @Scheduled(fixedDelayString = "${pivot.changes.relay-interval:1000}")
+    public void relay() {
+        int sequenced;
+        do {
+            // numbered in batches, a backlog does not hold the lock in one long transaction
+            sequenced = outbox.sequence(batchSize);
+        } while (sequenced == batchSize);
+
+        Map<String, List<Subscriber>> byTenant = subscribers.stream()
+                .collect(Collectors.groupingBy(subscriber -> subscriber.tenantId));
+        byTenant.forEach(this::dispatch);
+    }
+
+    @Scheduled(fixedDelayString = "PT1H", initialDelayString = "PT10M")
+    public void purge() {
+        repository.findLastSequenceNumber().ifPresent(last -> {
+            Date before = Date.from(Instant.now().minus(Duration.ofDays(retentionDays)));
+            LOG.debug("Purged {} change events", repository.deleteSequencedBefore(before, last));
+        });
+    }
+
+    private void dispatch(String tenantId, List<Subscriber> tenantSubscribers) {
+        long after = tenantSubscribers.stream().mapToLong(subscriber -> subscriber.offset).min().orElse(0L);
+
+        List<ChangeView> changes;
+        do {
+            changes = repository.findByGroupIdAfter(tenantId, after, PageRequest.of(0, batchSize)).stream()
+                    .map(ChangeView::of)
+                    .collect(Collectors.toList());
+            for (Subscriber subscriber : tenantSubscribers) {
+                send(subscriber, changes);
+            }
+            if (!changes.isEmpty()) {
+                after = changes.get(changes.size() - 1).getSequenceNumber();
+            }
+        } while (changes.size() == batchSize);
+    }
+
+    private void send(Subscriber subscriber, List<ChangeView> changes) {
+        // a relay run directly can overlap with the scheduled one
+        synchronized (subscriber) {
+            try {
+                for (ChangeView change : changes) {
+                    if (change.getSequenceNumber() <= subscriber.offset) {
+                        continue;
+                    }
+
+                    subscriber.emitter.send(SseEmitter.event()
+                            .id(Long.toString(change.getSequenceNumber()))
+                            .name(change.getType().name())
+                            .data(change, MediaType.APPLICATION_JSON));
+                    subscriber.offset = change.getSequenceNumber();
+                }
+            }
+            catch (IOException | IllegalStateException e) {
+                // the client went away, it resumes from its last event id when it reconnects
+                subscribers.remove(subscriber);
+                subscriber.emitter.completeWithError(e);
+            }
+        }
+    }
+
+    private static final class Subscriber {
+        private final String tenantId;
+        private final SseEmitter emitter;
+        private volatile long offset;
+
+        private Subscriber(String tenantId, SseEmitter emitter, long offset) {
+            this.tenantId = tenantId;
+            this.emitter = emitter;
+            this.offset = offset;
+        }
+    }
+}
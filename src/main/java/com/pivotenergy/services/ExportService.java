@@ -0,0 +1,154 @@
+package com.pivotenergy.services;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SequenceWriter;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.pivotenergy.repositories.GroupProjectionRepositoryImpl;
+import com.pivotenergy.repositories.GroupRepository;
+import com.pivotenergy.repositories.UserProjectionRepositoryImpl;
+import com.pivotenergy.repositories.UserRepository;
+import com.pivotenergy.security.model.UserSession;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.stereotype.Service;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Streams users and groups as NDJSON or CSV. Rows are read from a forward-only cursor as scalar
+ * projections and written to the response as they arrive, nothing is collected in memory.
+ */
+@Service
+public class ExportService {
+    private final UserRepository userRepository;
+    private final GroupRepository groupRepository;
+    private final ObjectMapper objectMapper;
+    private final CsvMapper csvMapper = new CsvMapper();
+    private final int fetchSize;
+
+    @Autowired
+    ExportService(UserRepository userRepository,
+                  GroupRepository groupRepository,
+                  ObjectMapper objectMapper,
+                  @Value("${pivot.export.fetch-size:500}") int fetchSize) {
+        this.userRepository = userRepository;
+        this.groupRepository = groupRepository;
+        this.objectMapper = objectMapper;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * @param fields requested user properties, all if empty
+     * @return resolved columns in output order
+     * @throws IllegalArgumentException if a property is not selectable
+     */
+    public List<String> userColumns(Collection<String> fields) {
+        return UserProjectionRepositoryImpl.PROJECTION.resolve(fields);
+    }
+
+    /**
+     * @param fields requested group properties, all if empty
+     * @return resolved columns in output order
+     * @throws IllegalArgumentException if a property is not selectable
+     */
+    public List<String> groupColumns(Collection<String> fields) {
+        return GroupProjectionRepositoryImpl.PROJECTION.resolve(fields);
+    }
+
+    /**
+     * Writes all users of the current tenant
+     *
+     * @param columns columns resolved by {@link #userColumns(Collection)}
+     * @param format output format
+     * @param out response body
+     * @return number of users written
+     */
+    public long exportUsers(List<String> columns, BulkFormat format, OutputStream out) throws IOException {
+        UserSession session = (UserSession) SecurityContextHolder.getContext().getAuthentication().getPrincipal();
+        try (RowWriter writer = new RowWriter(columns, format, out)) {
+            return writer.run(() -> userRepository.streamProjected(session.getTenantId(), columns, fetchSize, writer));
+        }
+    }
+
+    /**
+     * Writes all groups
+     *
+     * @param columns columns resolved by {@link #groupColumns(Collection)}
+     * @param format output format
+     * @param out response body
+     * @return number of groups written
+     */
+    public long exportGroups(List<String> columns, BulkFormat format, OutputStream out) throws IOException {
+        try (RowWriter writer = new RowWriter(columns, format, out)) {
+            return writer.run(() -> groupRepository.streamProjected(columns, fetchSize, writer));
+        }
+    }
+
+    /**
+     * Writes rows with one generator for the whole export and flushes once per fetched batch,
+     * so the client receives data at the pace the cursor delivers it.
+     */
+    private final class RowWriter implements Consumer<Map<String, Object>>, Closeable {
+        private final SequenceWriter writer;
+        private long rows;
+
+        private RowWriter(List<String> columns, BulkFormat format, OutputStream out) throws IOException {
+            if (format == BulkFormat.CSV) {
+                CsvSchema.Builder schema = CsvSchema.builder().setUseHeader(true);
+                columns.forEach(schema::addColumn);
+                this.writer = csvMapper.writer(schema.build())
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValues(out);
+            }
+            else {
+                this.writer = objectMapper.writer()
+                        .withRootValueSeparator("\n")
+                        .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                        .writeValues(out);
+            }
+        }
+
+        private long run(Scroll scroll) throws IOException {
+            try {
+                return scroll.run();
+            }
+            catch (UncheckedIOException e) {
+                // the client went away, surface the original failure
+                throw e.getCause();
+            }
+        }
+
+        @Override
+        public void accept(Map<String, Object> row) {
+            try {
+                writer.write(row);
+                if (++rows % fetchSize == 0) {
+                    writer.flush();
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Scroll {
+        long run();
+    }
+}
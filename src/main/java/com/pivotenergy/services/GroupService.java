@@ -1,86 +1,276 @@
 package com.pivotenergy.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
+import com.pivotenergy.datasource.TenantFilter;
+import com.pivotenergy.domain.ChangeEvent;
 import com.pivotenergy.domain.Group;
 import com.pivotenergy.domain.Role;
 import com.pivotenergy.domain.User;
 import com.pivotenergy.exceptions.PivotEntityNotFoundException;
+import com.pivotenergy.model.response.CursorPage;
+import com.pivotenergy.model.response.GroupView;
+import com.pivotenergy.model.response.UserView;
 import com.pivotenergy.repositories.GroupRepository;
+import com.pivotenergy.repositories.UserRefreshTokenRepository;
 import com.pivotenergy.repositories.UserRepository;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.stream.Collectors;
 
 @Service
-public class GroupService extends BaseService<Group, GroupRepository> {
+public class GroupService extends BaseService<Group, GroupView, GroupRepository> {
+    /**
+     * Properties which are not allowed to be updated
+     */
+    private static final Set<String> PATCH_DENIED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "id", "deleted", "version", "createdAt", "createdBy", "updatedAt", "updatedBy", "users")));
+
+    static final PatchApplier<Group> PATCH = PatchApplier.builder(Group.class)
+            .string("name", Group::setName)
+            .string("logoImage", Group::setLogoImage)
+            .string("companyName", Group::setCompanyName)
+            .string("companyWebsite", Group::setCompanyWebsite)
+            .string("contactEmail", Group::setContactEmail)
+            .string("phoneNumber", Group::setPhoneNumber)
+            .enumeration("type", Group.Type.class, Group::setType)
+            .build()
+            .without(PATCH_DENIED);
+
+    static final int MAX_MEMBERS_PAGE_SIZE = 500;
+
     private UserRepository userRepository;
+    private UserRefreshTokenRepository refreshTokenRepository;
+    private SecondLevelCache secondLevelCache;
+    private UserSearchIndex searchIndex;
+    private UserLookupCache lookupCache;
+    private Outbox outbox;
+    private PasswordHasher passwordHasher;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    GroupService(GroupRepository groupRepository, UserRepository userRepository) {
+    GroupService(GroupRepository groupRepository, UserRepository userRepository,
+                 UserRefreshTokenRepository refreshTokenRepository, SecondLevelCache secondLevelCache,
+                 UserSearchIndex searchIndex, UserLookupCache lookupCache, Outbox outbox,
+                 PasswordHasher passwordHasher) {
         super(Group.class, groupRepository);
         this.userRepository = userRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.secondLevelCache = secondLevelCache;
+        this.searchIndex = searchIndex;
+        this.lookupCache = lookupCache;
+        this.outbox = outbox;
+        this.passwordHasher = passwordHasher;
     }
 
-    public Group patch(String id, Map<String, Object> patch) throws Throwable {
-        Group incumbent = getById(id);
+    @Override
+    GroupView view(Group group) {
+        return GroupView.of(group);
+    }
 
-        sanitizePatch(patch);
-        ObjectMapper objectMapper = new ObjectMapper();
-        ObjectReader objectReader = objectMapper.readerForUpdating(incumbent);
-        Group updated = objectReader.readValue(objectMapper.writeValueAsString(patch));
+    @Override
+    Slice<Group> findSlice(Pageable pageable) {
+        return repository.findAllSliced(pageable);
+    }
+
+    @Override
+    Optional<Long> findVersion(String id) {
+        return repository.findVersionById(id);
+    }
 
-        return  repository.save(updated);
+    @Override
+    String countKey() {
+        // groups are not tenant scoped
+        return Group.class.getSimpleName();
     }
 
     /**
-     * Removes entries from map which are not allowed to be updated
+     * Loads a group by primary key, unlike a query the lookup is answered by the second level cache
      *
-     * @param map patch data
+     * @param id group id
+     * @return the group
+     * @throws PivotEntityNotFoundException if the group does not exist or is deleted
      */
-    private void sanitizePatch(Map<String, Object> map) {
-        map.remove("id");
-        map.remove("deleted");
-        map.remove("createdAt");
-        map.remove("createdBy");
-        map.remove("updatedAt");
-        map.remove("updatedBy");
-        map.remove("users");
+    @Override
+    @Transactional(readOnly = true)
+    public Group getById(String id) {
+        Group group = entityManager.find(Group.class, id);
+        if (group == null || Boolean.TRUE.equals(group.getDeleted())) {
+            throw new PivotEntityNotFoundException(Group.class, id);
+        }
+
+        return group;
+    }
+
+    /**
+     * Returns only the requested properties of groups
+     *
+     * @param pageable page request
+     * @param mode list mode
+     * @param fields requested properties
+     * @return Page or Slice of property maps
+     */
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> getCollection(Pageable pageable, ListMode mode, Collection<String> fields) {
+        return withTotal(repository.findAllProjected(fields, pageable), pageable, mode);
+    }
+
+    /**
+     * Returns only the requested properties of a group
+     *
+     * @param id group id
+     * @param fields requested properties
+     * @return property map
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getById(String id, Collection<String> fields) {
+        return repository.findProjectedById(id, fields)
+                .orElseThrow(new PivotEntityNotFoundException(Group.class, id));
+    }
+
+    @Override
+    @Transactional
+    public Group create(Group group) {
+        Group created = super.create(group);
+        outbox.record(created.getId(), ChangeEvent.Type.GROUP, created.getId(), ChangeEvent.Operation.CREATED);
+        return created;
     }
 
+    @Override
+    @Transactional
+    public Group update(String id, Group update, Long expectedVersion) throws Throwable {
+        Group updated = super.update(id, update, expectedVersion);
+        outbox.record(id, ChangeEvent.Type.GROUP, id, ChangeEvent.Operation.UPDATED);
+        return updated;
+    }
+
+    @Override
+    @Transactional
+    public Group patch(String id, Map<String, Object> patch, Long expectedVersion) throws Throwable {
+        Group incumbent = getById(id);
+        checkVersion(incumbent, expectedVersion);
+
+        Group patched = repository.save(PATCH.apply(incumbent, patch));
+        outbox.record(id, ChangeEvent.Type.GROUP, id, ChangeEvent.Operation.UPDATED);
+        return patched;
+    }
+
+    /**
+     * Soft deletes a group together with its members and revokes their refresh tokens, with one
+     * statement each in one transaction
+     *
+     * @param id group id
+     */
     @Override
     @Transactional
     public void softDelete(String id) {
-        if(!repository.existsById(id)){
+        if (repository.softDeleteById(id) == 0) {
             throw new PivotEntityNotFoundException(Group.class, id);
         }
 
-        repository.softDeleteById(id);
+        softDeleteMembers(id);
+        refreshTokenRepository.deleteByGroupId(id);
+        secondLevelCache.evictGroup(id);
+        searchIndex.invalidate(id);
+        lookupCache.invalidate(id);
+        outbox.record(id, ChangeEvent.Type.GROUP, id, ChangeEvent.Operation.DELETED);
+    }
+
+    /**
+     * Soft deletes all members of a group regardless of the tenant of the session. The statement is kept
+     * out of {@link UserRepository}, whose methods are limited to the tenant of the session, so only
+     * {@link #softDelete(String)} can run it.
+     *
+     * @param id group id
+     */
+    private void softDeleteMembers(String id) {
+        entityManager.createQuery("UPDATE User o SET o.deleted = true, o.deletedAt = CURRENT_TIMESTAMP, " +
+                "o.version = o.version + 1 WHERE o.deleted = false AND o.groupId = :groupId")
+                .setParameter("groupId", id)
+                .executeUpdate();
     }
 
     @Override
     @Transactional
     @PreAuthorize("hasRole('ROLE_SUPPORT_HARD_DELETE_USER')")
     public void hardDelete(String id) {
-        if(!repository.existsById(id)){
+        if (repository.hardDeleteById(id) == 0) {
             throw new PivotEntityNotFoundException(Group.class, id);
         }
 
-        repository.deleteById(id);
+        secondLevelCache.evictGroup(id);
+        searchIndex.invalidate(id);
+        lookupCache.invalidate(id);
+        outbox.record(id, ChangeEvent.Type.GROUP, id, ChangeEvent.Operation.DELETED);
     }
 
-    @Transactional
-    public User addUser(String id, User user) throws Throwable {
-        Group group = getById(id);
-        user.getRoles().forEach(x -> x.setRole(x.getScope(), x.getAction(), x.getTarget()));
-        user.setGroup(group);
+    /**
+     * Returns a keyset page of the members of a group without touching {@link Group#getUsers()}
+     *
+     * @param id group id
+     * @param after id of the last user of the previous page, {@literal null} for the first page
+     * @param size page size, at most {@value #MAX_MEMBERS_PAGE_SIZE}
+     * @return page of users
+     */
+    @Transactional(readOnly = true)
+    public CursorPage<UserView> getUsers(String id, String after, int size) {
+        if (!repository.findVersionById(id).isPresent()) {
+            throw new PivotEntityNotFoundException(Group.class, id);
+        }
+
+        int limit = Math.max(1, Math.min(size, MAX_MEMBERS_PAGE_SIZE));
+        // one extra row tells whether there is a next page
+        Pageable pageable = PageRequest.of(0, limit + 1);
+        // support staff list the members of any tenant
+        List<User> users = TenantFilter.unfiltered(entityManager, () -> after == null
+                ? userRepository.findByGroupId(id, pageable)
+                : userRepository.findByGroupIdAfter(id, after, pageable));
+
+        List<UserView> content = users.stream()
+                .limit(limit)
+                .map(UserView::of)
+                .collect(Collectors.toList());
+
+        return new CursorPage<>(content, limit, users.size() > limit ? content.get(limit - 1).getId() : null);
+    }
+
+    /**
+     * The password is hashed before the transaction takes a connection
+     *
+     * @param id group id
+     * @param user new member
+     * @return view of the created user
+     */
+    public UserView addUser(String id, User user) throws Throwable {
+        passwordHasher.hashPassword(user);
+        return inWriteTransaction(() -> {
+            Group group = getById(id);
+            user.getRoles().forEach(x -> x.setRole(x.getScope(), x.getAction(), x.getTarget()));
+            user.setGroup(group);
 
-        return userRepository.save(user);
+            User saved = userRepository.save(user);
+            searchIndex.put(id, saved);
+            outbox.record(id, ChangeEvent.Type.USER, saved.getId(), ChangeEvent.Operation.CREATED);
+            return UserView.of(saved);
+        });
     }
 
     @PostConstruct
@@ -102,7 +292,8 @@ public class GroupService extends BaseService<Group, GroupRepository> {
 
         }
 
-        if(!userRepository.findByEmail("app-admin@metro.io").isPresent()) {
+        // there is no session yet
+        if(!TenantFilter.unfiltered(entityManager, () -> userRepository.findByEmail("app-admin@metro.io")).isPresent()) {
             LOG.info("Creating base users");
             userRepository.save(new User()
                     .setGroup(group)
@@ -112,7 +303,7 @@ public class GroupService extends BaseService<Group, GroupRepository> {
                     .setEmail("app-admin@metro.io")
                     .addRole(new Role().setRole(Role.Scope.ROLE_ADMIN, Role.Action.ADMIN, Role.Target.GLOBAL))
                     .setLocale(Locale.US.getISO3Language())
-                    .setPassword("2S33k0u7@2016")
+                    .setEncodedPassword(passwordHasher.encode("2S33k0u7@2016"))
                     .setEnabled(true));
 
             LOG.info("Users created");
@@ -0,0 +1,22 @@
+package com.pivotenergy.services;
+
+/**
+ * Controls how a collection request is answered.
+ */
+public enum ListMode {
+    /**
+     * Page with an exact total, costs an additional count query per request
+     */
+    PAGE,
+
+    /**
+     * Has-next only slice, fetches size + 1 rows and never counts
+     */
+    SLICE,
+
+    /**
+     * Has-next slice with a cached, possibly stale, total. Counts are cached per node for a minute and
+     * are not invalidated by writes, creates and deletes show up in the total once it expires.
+     */
+    APPROXIMATE
+}
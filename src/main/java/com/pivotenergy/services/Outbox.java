@@ -0,0 +1,61 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.domain.ChangeEvent;
+import com.pivotenergy.repositories.ChangeEventRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.List;
+
+/**
+ * Records changes to users and groups in the transaction making them, a change is published if and
+ * only if it is committed.
+ *
+ * Recorded events have no sequence number yet: ids are handed out in the order events are recorded,
+ * not in the order their transactions commit. The relay numbers committed events in batches, so a
+ * consumer resuming after a sequence number never misses an event committed late.
+ */
+@Component
+public class Outbox {
+    private final ChangeEventRepository repository;
+
+    @Autowired
+    Outbox(ChangeEventRepository repository) {
+        this.repository = repository;
+    }
+
+    /**
+     * @param groupId tenant the entity belongs to, the id of a group for the group itself
+     * @param type entity type
+     * @param entityId entity id
+     * @param operation kind of change
+     */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public void record(String groupId, ChangeEvent.Type type, String entityId, ChangeEvent.Operation operation) {
+        repository.save(new ChangeEvent(groupId, type, entityId, operation));
+    }
+
+    /**
+     * Assigns sequence numbers to the oldest committed events which have none yet
+     *
+     * @param limit largest number of events numbered at once
+     * @return number of events numbered, less than the limit once all are numbered
+     */
+    @Transactional
+    public int sequence(int limit) {
+        List<ChangeEvent> unsequenced = repository.findUnsequenced(PageRequest.of(0, limit));
+        if (unsequenced.isEmpty()) {
+            return 0;
+        }
+
+        // read after the lock is held, numbers committed by another relay in the meantime are seen
+        long last = repository.findLastSequenceNumber().orElse(0L);
+        for (ChangeEvent event : unsequenced) {
+            event.setSequenceNumber(++last);
+        }
+        return unsequenced.size();
+    }
+}
@@ -0,0 +1,93 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.domain.User;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * Hashes passwords on a bounded pool. BCrypt is deliberately slow, spreading the hashes of a bulk
+ * request over several cores is what keeps an import from being bound by a single thread.
+ *
+ * When the queue is full the submitting thread hashes itself, so a large import never queues
+ * more than a few chunks of plain text passwords.
+ *
+ * Entities never hash, {@link User#setPassword(String)} only keeps the plain text password until
+ * {@link #hashPassword(User)} replaces it, once, before the user is saved.
+ */
+@Component
+public class PasswordHasher implements DisposableBean {
+    private static final PasswordEncoder ENCODER = new BCryptPasswordEncoder();
+
+    private final ExecutorService pool;
+
+    @Autowired
+    PasswordHasher(@Value("${pivot.password-hasher.threads:0}") int threads) {
+        int size = threads > 0 ? threads : Math.max(1, Runtime.getRuntime().availableProcessors());
+        AtomicInteger counter = new AtomicInteger();
+        this.pool = new ThreadPoolExecutor(size, size, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(size * 64),
+                runnable -> {
+                    Thread thread = new Thread(runnable, "password-hasher-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Hashes on the pool, so single requests share the cores with bulk imports instead of adding to them
+     *
+     * @param raw plain text password
+     * @return bcrypt hash
+     */
+    public String encode(String raw) {
+        return CompletableFuture.supplyAsync(() -> ENCODER.encode(raw), pool).join();
+    }
+
+    /**
+     * Replaces the plain text password of the user with its hash, users without one are left alone
+     *
+     * @param user user about to be saved
+     * @return the user
+     */
+    public User hashPassword(User user) {
+        if (user.getRawPassword() != null) {
+            user.setEncodedPassword(encode(user.getRawPassword()));
+        }
+        return user;
+    }
+
+    /**
+     * Hashes the passwords in parallel
+     *
+     * @param raw plain text passwords
+     * @return hashes in the order of the given passwords
+     */
+    public List<String> encodeAll(List<String> raw) {
+        List<CompletableFuture<String>> hashes = new ArrayList<>(raw.size());
+        for (String password : raw) {
+            hashes.add(CompletableFuture.supplyAsync(() -> ENCODER.encode(password), pool));
+        }
+
+        return hashes.stream().map(CompletableFuture::join).collect(Collectors.toList());
+    }
+
+    @Override
+    public void destroy() {
+        pool.shutdownNow();
+    }
+}
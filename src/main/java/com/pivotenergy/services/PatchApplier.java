@@ -0,0 +1,176 @@
+package com.pivotenergy.services;
+
+import com.fasterxml.jackson.databind.util.StdDateFormat;
+
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Applies a PATCH body to an entity through setters registered once at startup. Values are converted
+ * by typed converters instead of being written to JSON text and read back.
+ *
+ * @param <T> entity type
+ */
+final class PatchApplier<T> {
+    private final String entity;
+    private final Map<String, BiConsumer<T, Object>> fields;
+    private final Set<String> ignored;
+
+    private PatchApplier(String entity, Map<String, BiConsumer<T, Object>> fields, Set<String> ignored) {
+        this.entity = entity;
+        this.fields = Collections.unmodifiableMap(fields);
+        this.ignored = Collections.unmodifiableSet(ignored);
+    }
+
+    static <T> Builder<T> builder(Class<T> type) {
+        return new Builder<>(type.getSimpleName());
+    }
+
+    /**
+     * @param denied properties the caller is not allowed to change, they are dropped from patches
+     * @return applier restricted to the remaining properties
+     */
+    PatchApplier<T> without(Collection<String> denied) {
+        Map<String, BiConsumer<T, Object>> allowed = new LinkedHashMap<>(fields);
+        allowed.keySet().removeAll(denied);
+        Set<String> dropped = new HashSet<>(ignored);
+        dropped.addAll(denied);
+        return new PatchApplier<>(entity, allowed, dropped);
+    }
+
+    /**
+     * @return properties this applier writes
+     */
+    Set<String> getFields() {
+        return fields.keySet();
+    }
+
+    /**
+     * Applies the patch to the target, properties which are denied or ignored are skipped
+     *
+     * @param target entity to update
+     * @param patch property values
+     * @return target
+     * @throws IllegalArgumentException for unknown properties or values of the wrong type
+     */
+    T apply(T target, Map<String, Object> patch) {
+        patch.forEach((name, value) -> {
+            BiConsumer<T, Object> field = fields.get(name);
+            if (field != null) {
+                field.accept(target, value);
+            }
+            else if (!ignored.contains(name)) {
+                throw new IllegalArgumentException(String.format("Unknown property '%s' for %s", name, entity));
+            }
+        });
+
+        return target;
+    }
+
+    static final class Builder<T> {
+        private final String entity;
+        private final Map<String, BiConsumer<T, Object>> fields = new LinkedHashMap<>();
+        private final Set<String> ignored = new HashSet<>();
+
+        private Builder(String entity) {
+            this.entity = entity;
+        }
+
+        Builder<T> string(String name, BiConsumer<T, String> setter) {
+            return field(name, setter, value -> value instanceof String ? (String) value : String.valueOf(value));
+        }
+
+        Builder<T> bool(String name, BiConsumer<T, Boolean> setter) {
+            return field(name, setter, value -> {
+                if (value instanceof Boolean) {
+                    return (Boolean) value;
+                }
+                if ("true".equals(value) || "false".equals(value)) {
+                    return Boolean.valueOf((String) value);
+                }
+                throw invalid(name, value, "boolean");
+            });
+        }
+
+        Builder<T> integer(String name, BiConsumer<T, Integer> setter) {
+            return field(name, setter, value -> {
+                if (value instanceof Integer || value instanceof Long || value instanceof Short) {
+                    return ((Number) value).intValue();
+                }
+                if (value instanceof String) {
+                    try {
+                        return Integer.valueOf((String) value);
+                    }
+                    catch (NumberFormatException ignore) {
+                        // fall through
+                    }
+                }
+                throw invalid(name, value, "integer");
+            });
+        }
+
+        Builder<T> date(String name, BiConsumer<T, Date> setter) {
+            return field(name, setter, value -> {
+                if (value instanceof Number) {
+                    return new Date(((Number) value).longValue());
+                }
+                if (value instanceof String) {
+                    try {
+                        // same formats jackson accepts for java.util.Date
+                        return new StdDateFormat().parse((String) value);
+                    }
+                    catch (ParseException ignore) {
+                        // fall through
+                    }
+                }
+                throw invalid(name, value, "date");
+            });
+        }
+
+        <E extends Enum<E>> Builder<T> enumeration(String name, Class<E> type, BiConsumer<T, E> setter) {
+            return field(name, setter, value -> {
+                if (value instanceof String) {
+                    try {
+                        return Enum.valueOf(type, (String) value);
+                    }
+                    catch (IllegalArgumentException ignore) {
+                        // fall through
+                    }
+                }
+                throw invalid(name, value, type.getSimpleName());
+            });
+        }
+
+        /**
+         * @param names properties which are accepted in a patch but never written, e.g. associations
+         *              which are managed through their own endpoints
+         * @return this builder
+         */
+        Builder<T> ignore(String... names) {
+            Collections.addAll(ignored, names);
+            return this;
+        }
+
+        PatchApplier<T> build() {
+            return new PatchApplier<>(entity, new LinkedHashMap<>(fields), new HashSet<>(ignored));
+        }
+
+        private <V> Builder<T> field(String name, BiConsumer<T, V> setter, Function<Object, V> converter) {
+            fields.put(name, (target, value) -> setter.accept(target, value == null ? null : converter.apply(value)));
+            return this;
+        }
+
+        private IllegalArgumentException invalid(String name, Object value, String type) {
+            return new IllegalArgumentException(String.format("Invalid value '%s' for %s.%s, expected %s",
+                    value, entity, name, type));
+        }
+    }
+}
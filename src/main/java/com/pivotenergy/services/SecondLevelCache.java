@@ -0,0 +1,49 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.domain.Group;
+import com.pivotenergy.domain.Role;
+import com.pivotenergy.domain.User;
+import org.hibernate.Cache;
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Targeted eviction of second level cache entries which are changed by bulk statements.
+ *
+ * Hibernate invalidates whole regions for JPQL bulk updates; evicting the affected entries again once
+ * the transaction has completed guarantees no concurrent reader re-populated them with pre-commit state,
+ * see {@link TransactionalEviction}.
+ */
+@Component
+public class SecondLevelCache {
+    static final String USER_ROLES_REGION = User.class.getName() + ".roles";
+
+    private final Cache cache;
+
+    @Autowired
+    SecondLevelCache(EntityManagerFactory entityManagerFactory) {
+        this.cache = entityManagerFactory.unwrap(SessionFactory.class).getCache();
+    }
+
+    public void evictGroup(String id) {
+        TransactionalEviction.evict(() -> cache.evictEntityData(Group.class, id));
+    }
+
+    public void evictRole(String id) {
+        TransactionalEviction.evict(() -> cache.evictEntityData(Role.class, id));
+    }
+
+    public void evictUserRoles(String userId) {
+        TransactionalEviction.evict(() -> cache.evictCollectionData(USER_ROLES_REGION, userId));
+    }
+
+    /**
+     * Evicts the roles of all users, cheaper than evicting thousands of keys after a batch change
+     */
+    public void evictAllUserRoles() {
+        TransactionalEviction.evict(() -> cache.evictCollectionData(USER_ROLES_REGION));
+    }
+}
@@ -0,0 +1,73 @@
+package com.pivotenergy.services;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Coalesces concurrent identical reads: the first caller for a key runs the call, callers arriving
+ * while it is in flight wait for its result instead of running their own. The key is removed once the
+ * call completes, a later caller runs the call again, nothing is cached.
+ *
+ * Keys must contain everything the result depends on, in particular the tenant, and results are
+ * handed to several threads, so only immutable results may be shared.
+ *
+ * @param <V> result type
+ */
+class SingleFlight<V> {
+    private final Map<String, Flight<V>> flights = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    interface Call<V> {
+        V call() throws Throwable;
+    }
+
+    /**
+     * @param key identifies identical reads
+     * @param call the read
+     * @return the result of the call in flight for the key, or of this call if there was none
+     * @throws Throwable the failure of the call, shared with all callers waiting for it
+     */
+    V execute(String key, Call<V> call) throws Throwable {
+        Flight<V> flight = new Flight<>();
+        Flight<V> inFlight = flights.putIfAbsent(key, flight);
+        if (inFlight != null) {
+            inFlight.callers.incrementAndGet();
+            try {
+                return inFlight.result.get();
+            }
+            catch (ExecutionException e) {
+                throw e.getCause();
+            }
+        }
+
+        try {
+            V result = call.call();
+            flight.result.complete(result);
+            return result;
+        }
+        catch (Throwable t) {
+            flight.result.completeExceptionally(t);
+            throw t;
+        }
+        finally {
+            flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * @param key identifies identical reads
+     * @return number of callers sharing the call in flight for the key, 0 if there is none
+     */
+    int callers(String key) {
+        Flight<V> flight = flights.get(key);
+        return flight == null ? 0 : flight.callers.get();
+    }
+
+    private static final class Flight<V> {
+        private final CompletableFuture<V> result = new CompletableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger(1);
+    }
+}
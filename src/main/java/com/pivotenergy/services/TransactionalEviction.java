@@ -0,0 +1,28 @@
+package com.pivotenergy.services;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Evicts cache entries right away and, inside a transaction, again once it has completed. A concurrent
+ * reader which loaded the state before the commit in between cannot leave it cached.
+ */
+final class TransactionalEviction {
+    private TransactionalEviction() {
+    }
+
+    /**
+     * @param eviction removes the affected entries, runs once or twice
+     */
+    static void evict(Runnable eviction) {
+        eviction.run();
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCompletion(int status) {
+                    eviction.run();
+                }
+            });
+        }
+    }
+}
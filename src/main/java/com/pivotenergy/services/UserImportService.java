@@ -0,0 +1,360 @@
+package com.pivotenergy.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonMappingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.pivotenergy.datasource.TenantFilter;
+import com.pivotenergy.domain.ChangeEvent;
+import com.pivotenergy.domain.Group;
+import com.pivotenergy.domain.Role;
+import com.pivotenergy.domain.User;
+import com.pivotenergy.exceptions.PivotEntityNotFoundException;
+import com.pivotenergy.exceptions.PivotInvalidRequestException;
+import com.pivotenergy.model.request.UserImportRow;
+import com.pivotenergy.model.response.UserImportResult;
+import com.pivotenergy.repositories.UserRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.NestedExceptionUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.validation.ConstraintViolation;
+import javax.validation.Validator;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Imports users into a group from a NDJSON or CSV stream.
+ *
+ * Rows are read and validated one at a time and written in chunks: the passwords of a chunk are
+ * hashed in parallel, then users and roles are inserted with JDBC batching in one transaction per
+ * chunk and the persistence context is cleared. Memory is bounded by the chunk size, not the import.
+ * A failing chunk is rolled back on its own, rows of earlier chunks stay imported.
+ *
+ * {@link #addUsers(String, List)} shares validation and batching but is all or nothing.
+ */
+@Service
+public class UserImportService {
+    private static final Logger LOG = LoggerFactory.getLogger(UserImportService.class);
+    private static final byte[] NEW_LINE = {'\n'};
+
+    private final UserRepository userRepository;
+    private final PasswordHasher passwordHasher;
+    private final UserSearchIndex searchIndex;
+    private final Outbox outbox;
+    private final Validator validator;
+    private final TransactionTemplate transactionTemplate;
+    private final ObjectReader jsonReader;
+    private final ObjectReader csvReader;
+    private final ObjectMapper objectMapper;
+    private final int chunkSize;
+    private final int bulkMax;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    UserImportService(UserRepository userRepository,
+                      PasswordHasher passwordHasher,
+                      UserSearchIndex searchIndex,
+                      Outbox outbox,
+                      Validator validator,
+                      PlatformTransactionManager transactionManager,
+                      ObjectMapper objectMapper,
+                      @Value("${pivot.import.chunk-size:500}") int chunkSize,
+                      @Value("${pivot.import.bulk-max:5000}") int bulkMax) {
+        this.userRepository = userRepository;
+        this.passwordHasher = passwordHasher;
+        this.searchIndex = searchIndex;
+        this.outbox = outbox;
+        this.validator = validator;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.objectMapper = objectMapper;
+        this.jsonReader = objectMapper.readerFor(UserImportRow.class);
+        this.csvReader = new CsvMapper()
+                .readerFor(UserImportRow.class)
+                .with(CsvSchema.emptySchema().withHeader().withArrayElementSeparator(";"));
+        this.chunkSize = chunkSize;
+        this.bulkMax = bulkMax;
+    }
+
+    /**
+     * Adds the users to the group in one transaction. Every row is validated before anything is
+     * written, nothing is created unless all rows are valid.
+     *
+     * @param groupId group the users are added to
+     * @param rows users to create
+     * @return ids of the created users in request order
+     * @throws PivotInvalidRequestException if the request is too large or any row is invalid
+     */
+    public List<String> addUsers(String groupId, List<UserImportRow> rows) {
+        if (rows.size() > bulkMax) {
+            throw new PivotInvalidRequestException("Too Many Users", String.format(
+                    "At most %d users can be added at once, use the import endpoint for %d users", bulkMax, rows.size()));
+        }
+
+        List<List<Pending>> chunks = new ArrayList<>();
+        List<Pending> valid = new ArrayList<>(rows.size());
+        Set<String> emails = new HashSet<>();
+        for (int start = 0; start < rows.size(); start += chunkSize) {
+            List<Pending> chunk = new ArrayList<>(chunkSize);
+            for (int i = start; i < Math.min(start + chunkSize, rows.size()); i++) {
+                chunk.add(new Pending(i + 1, rows.get(i)));
+            }
+            valid.addAll(validate(chunk, emails));
+            chunks.add(chunk);
+        }
+
+        if (valid.size() < rows.size()) {
+            String message = chunks.stream()
+                    .flatMap(List::stream)
+                    .filter(pending -> pending.result != null)
+                    .map(pending -> String.format("row %d: %s", pending.row, String.join(", ", pending.result.getErrors())))
+                    .collect(Collectors.joining("; "));
+            throw new PivotInvalidRequestException("Invalid Users Provided", message);
+        }
+
+        List<String> hashes = passwordHasher.encodeAll(valid.stream()
+                .map(pending -> pending.data.getPassword())
+                .collect(Collectors.toList()));
+        for (int i = 0; i < valid.size(); i++) {
+            valid.get(i).hash = hashes.get(i);
+        }
+
+        transactionTemplate.execute(status -> {
+            chunks.forEach(chunk -> persist(groupId, chunk));
+            return null;
+        });
+        searchIndex.invalidate(groupId);
+
+        return valid.stream().map(pending -> pending.id).collect(Collectors.toList());
+    }
+
+    /**
+     * Imports the users of the stream into the group and writes one result line per row
+     *
+     * @param groupId group the users are added to
+     * @param format format of the input
+     * @param in rows to import
+     * @param out receives one NDJSON {@link UserImportResult} per row, flushed after every chunk
+     */
+    public void importUsers(String groupId, BulkFormat format, InputStream in, OutputStream out) throws IOException {
+        ObjectReader reader = format == BulkFormat.CSV ? csvReader : jsonReader;
+        List<Pending> chunk = new ArrayList<>(chunkSize);
+        long row = 0;
+        long created = 0;
+
+        try (MappingIterator<UserImportRow> rows = reader.readValues(in)) {
+            while (true) {
+                long current = row + 1;
+                Pending pending;
+                try {
+                    if (!rows.hasNextValue()) {
+                        break;
+                    }
+                    pending = new Pending(current, rows.nextValue());
+                }
+                catch (JsonMappingException e) {
+                    // the row is well formed but does not bind, the iterator resumes at the next row
+                    pending = new Pending(current, null);
+                    pending.result = UserImportResult.failed(current, null, e.getOriginalMessage());
+                }
+                catch (JsonProcessingException e) {
+                    // malformed input, nothing after this point can be trusted
+                    created += flush(groupId, chunk, out);
+                    write(out, UserImportResult.failed(current, null, e.getOriginalMessage()));
+                    out.flush();
+                    return;
+                }
+
+                row = current;
+                chunk.add(pending);
+                if (chunk.size() == chunkSize) {
+                    created += flush(groupId, chunk, out);
+                }
+            }
+        }
+
+        created += flush(groupId, chunk, out);
+        LOG.info("Imported {} of {} users into group {}", created, row, groupId);
+    }
+
+    private long flush(String groupId, List<Pending> chunk, OutputStream out) throws IOException {
+        List<Pending> valid = validate(chunk, new HashSet<>());
+
+        if (!valid.isEmpty()) {
+            List<String> hashes = passwordHasher.encodeAll(valid.stream()
+                    .map(pending -> pending.data.getPassword())
+                    .collect(Collectors.toList()));
+            for (int i = 0; i < valid.size(); i++) {
+                valid.get(i).hash = hashes.get(i);
+            }
+
+            try {
+                transactionTemplate.execute(status -> {
+                    persist(groupId, valid);
+                    return null;
+                });
+                // the index is rebuilt on the next search instead of being updated row by row
+                searchIndex.invalidate(groupId);
+                valid.forEach(pending ->
+                        pending.result = UserImportResult.created(pending.row, pending.data.getEmail(), pending.id));
+            }
+            catch (RuntimeException e) {
+                LOG.warn("Import chunk for group {} failed", groupId, e);
+                String message = NestedExceptionUtils.getMostSpecificCause(e).getMessage();
+                valid.forEach(pending -> {
+                    pending.id = null;
+                    pending.result = UserImportResult.failed(pending.row, pending.data.getEmail(), message);
+                });
+            }
+        }
+
+        for (Pending pending : chunk) {
+            write(out, pending.result);
+        }
+        out.flush();
+        chunk.clear();
+
+        return valid.stream().filter(pending -> pending.id != null).count();
+    }
+
+    /**
+     * Marks invalid rows, duplicates within the chunk and emails which already exist as failed
+     *
+     * @param chunk rows read so far
+     * @param emails emails seen so far, rows repeating one of them are duplicates
+     * @return rows which can be inserted
+     */
+    private List<Pending> validate(List<Pending> chunk, Set<String> emails) {
+        List<Pending> candidates = new ArrayList<>(chunk.size());
+
+        for (Pending pending : chunk) {
+            if (pending.result != null) {
+                continue;
+            }
+
+            List<String> errors = new ArrayList<>();
+            for (ConstraintViolation<UserImportRow> violation : validator.validate(pending.data)) {
+                errors.add(violation.getPropertyPath() + " " + violation.getMessage());
+            }
+            for (String name : pending.data.getRoles()) {
+                try {
+                    pending.roles.add(Role.fromName(name.trim()));
+                }
+                catch (IllegalArgumentException e) {
+                    errors.add(e.getMessage());
+                }
+            }
+            if (errors.isEmpty() && !emails.add(normalize(pending.data.getEmail()))) {
+                errors.add("email is duplicated in the request");
+            }
+
+            if (errors.isEmpty()) {
+                candidates.add(pending);
+            }
+            else {
+                pending.result = UserImportResult.failed(pending.row, pending.data.getEmail(), errors);
+            }
+        }
+
+        if (candidates.isEmpty()) {
+            return candidates;
+        }
+
+        // earlier chunks are committed already, so this also catches duplicates across chunks
+        List<String> candidateEmails = candidates.stream()
+                .map(pending -> pending.data.getEmail())
+                .collect(Collectors.toList());
+        Set<String> existing = TenantFilter.unfiltered(entityManager,
+                () -> userRepository.findExistingEmails(candidateEmails))
+                .stream()
+                .map(UserImportService::normalize)
+                .collect(Collectors.toSet());
+
+        List<Pending> valid = new ArrayList<>(candidates.size());
+        for (Pending pending : candidates) {
+            if (existing.contains(normalize(pending.data.getEmail()))) {
+                pending.result = UserImportResult.failed(pending.row, pending.data.getEmail(), "email already exists");
+            }
+            else {
+                valid.add(pending);
+            }
+        }
+
+        return valid;
+    }
+
+    private void persist(String groupId, List<Pending> valid) {
+        // the group is loaded per chunk because the persistence context is cleared after each one
+        Group group = entityManager.find(Group.class, groupId);
+        if (group == null || Boolean.TRUE.equals(group.getDeleted())) {
+            throw new PivotEntityNotFoundException(Group.class, groupId);
+        }
+
+        List<User> users = new ArrayList<>(valid.size());
+        for (Pending pending : valid) {
+            UserImportRow data = pending.data;
+            User user = new User()
+                    .setGroup(group)
+                    .setEmail(data.getEmail())
+                    .setFirstName(data.getFirstName())
+                    .setLastName(data.getLastName())
+                    .setLocale(data.getLocale())
+                    .setType(data.getType())
+                    .setEnabled(data.getEnabled())
+                    .setEncodedPassword(pending.hash);
+            pending.roles.forEach(user::addRole);
+
+            entityManager.persist(user);
+            outbox.record(groupId, ChangeEvent.Type.USER, user.getId(), ChangeEvent.Operation.CREATED);
+            users.add(user);
+        }
+
+        entityManager.flush();
+        for (int i = 0; i < valid.size(); i++) {
+            valid.get(i).id = users.get(i).getId();
+        }
+        entityManager.clear();
+    }
+
+    private void write(OutputStream out, UserImportResult result) throws IOException {
+        out.write(objectMapper.writeValueAsBytes(result));
+        out.write(NEW_LINE);
+    }
+
+    private static String normalize(String email) {
+        return email.toLowerCase(Locale.ROOT);
+    }
+
+    private static final class Pending {
+        private final long row;
+        private final UserImportRow data;
+        private final List<Role> roles = new ArrayList<>();
+        private String hash;
+        private String id;
+        private UserImportResult result;
+
+        private Pending(long row, UserImportRow data) {
+            this.row = row;
+            this.data = data;
+        }
+    }
+}
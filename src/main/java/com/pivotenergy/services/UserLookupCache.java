@@ -0,0 +1,92 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.model.response.UserView;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Short lived cache of the user views served by the batch lookup, other services resolve the same
+ * owners and assignees for every page they render.
+ *
+ * Entries are keyed by tenant and id so a caller never sees users of another tenant. Only users which
+ * were found are cached, a user created in the meantime shows up with the next lookup. Changes evict
+ * the affected entries right away and again once the transaction has completed, the time to live
+ * bounds staleness for changes made by other instances.
+ */
+@Component
+public class UserLookupCache {
+    private final long ttlMillis;
+    private final int maxEntries;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    @Autowired
+    UserLookupCache(@Value("${pivot.lookup.cache-ttl:5000}") long ttlMillis,
+                    @Value("${pivot.lookup.cache-size:10000}") int maxEntries) {
+        this.ttlMillis = ttlMillis;
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param tenantId tenant of the caller
+     * @param id user id
+     * @return the cached view or {@literal null} if there is none or it has expired
+     */
+    UserView get(String tenantId, String id) {
+        Entry entry = entries.get(key(tenantId, id));
+        if (entry == null || System.currentTimeMillis() - entry.cachedAt >= ttlMillis) {
+            return null;
+        }
+
+        return entry.view;
+    }
+
+    void put(String tenantId, UserView view) {
+        if (ttlMillis <= 0) {
+            return;
+        }
+
+        if (entries.size() >= maxEntries) {
+            entries.clear();
+        }
+        entries.put(key(tenantId, view.getId()), new Entry(view, System.currentTimeMillis()));
+    }
+
+    /**
+     * Evicts a user of a tenant
+     *
+     * @param tenantId tenant of the user
+     * @param id user id
+     */
+    public void evict(String tenantId, String id) {
+        String key = key(tenantId, id);
+        TransactionalEviction.evict(() -> entries.remove(key));
+    }
+
+    /**
+     * Evicts all users of a tenant, cheaper than evicting them one by one after a batch change
+     *
+     * @param tenantId tenant id
+     */
+    public void invalidate(String tenantId) {
+        String prefix = key(tenantId, "");
+        TransactionalEviction.evict(() -> entries.keySet().removeIf(key -> key.startsWith(prefix)));
+    }
+
+    private static String key(String tenantId, String id) {
+        return tenantId + "/" + id;
+    }
+
+    private static final class Entry {
+        private final UserView view;
+        private final long cachedAt;
+
+        private Entry(UserView view, long cachedAt) {
+            this.view = view;
+            this.cachedAt = cachedAt;
+        }
+    }
+}
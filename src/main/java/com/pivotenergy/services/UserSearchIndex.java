@@ -0,0 +1,418 @@
+package com.pivotenergy.services;
+
+import com.pivotenergy.domain.User;
+import com.pivotenergy.model.response.UserSummary;
+import com.pivotenergy.repositories.UserRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Typeahead index over email, first name and last name of the users of a tenant.
+ *
+ * Each tenant gets its own index, built on the first search from a cursor over the non deleted users
+ * of the tenant. Terms are kept in a sorted map for prefix lookups and split into trigrams for infix
+ * lookups; postings are sorted int arrays of document numbers. A user costs roughly 0.5 to 0.7 KB of
+ * heap, most of it the summary strings, the term map entries and about 40 trigram postings. Changes are
+ * applied after commit.
+ *
+ * Memory is bounded by the number of documents across all tenants: the least recently searched tenants
+ * are dropped once the total exceeds the configured limit, or once more tenants than configured are
+ * loaded. Tenants larger than the configured size are not indexed at all and searched in the database.
+ */
+@Component
+public class UserSearchIndex {
+    private static final List<String> FIELDS = Arrays.asList("id", "email", "firstName", "lastName");
+
+    private final UserRepository userRepository;
+    private final int maxTenantSize;
+    private final int maxDocuments;
+    private final Map<String, TenantIndex> tenants;
+
+    @Autowired
+    UserSearchIndex(UserRepository userRepository,
+                    @Value("${pivot.search.max-tenants:16}") int maxTenants,
+                    @Value("${pivot.search.max-tenant-size:5000}") int maxTenantSize,
+                    @Value("${pivot.search.max-documents:12000}") int maxDocuments) {
+        this.userRepository = userRepository;
+        this.maxTenantSize = Math.min(maxTenantSize, maxDocuments);
+        this.maxDocuments = maxDocuments;
+        this.tenants = new LinkedHashMap<String, TenantIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, TenantIndex> eldest) {
+                return size() > maxTenants;
+            }
+        };
+    }
+
+    /**
+     * @param tenantId tenant to search
+     * @param query prefix of an email, first or last name, or any part of them with at least 3 characters
+     * @param limit maximum number of results
+     * @return prefix matches followed by infix matches, empty if the tenant is too large to be indexed
+     */
+    public Optional<List<UserSummary>> search(String tenantId, String query, int limit) {
+        TenantIndex index;
+        synchronized (tenants) {
+            index = tenants.computeIfAbsent(tenantId, key -> new TenantIndex());
+        }
+
+        if (!index.build(tenantId)) {
+            return Optional.empty();
+        }
+        evictBeyondLimit(tenantId);
+
+        return Optional.of(index.search(normalize(query), limit));
+    }
+
+    /**
+     * Drops the least recently searched tenants until the documents of all tenants fit the limit
+     *
+     * @param searched tenant being searched, it is kept
+     */
+    private void evictBeyondLimit(String searched) {
+        synchronized (tenants) {
+            long total = tenants.values().stream().mapToLong(index -> index.size).sum();
+            Iterator<Map.Entry<String, TenantIndex>> eldest = tenants.entrySet().iterator();
+            while (total > maxDocuments && eldest.hasNext()) {
+                Map.Entry<String, TenantIndex> entry = eldest.next();
+                if (!entry.getKey().equals(searched)) {
+                    total -= entry.getValue().size;
+                    eldest.remove();
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds or replaces the user once the current transaction commits
+     *
+     * @param tenantId tenant of the user
+     * @param user user with its current properties
+     */
+    public void put(String tenantId, User user) {
+        UserSummary summary = new UserSummary(user.getId(), user.getEmail(), user.getFirstName(), user.getLastName());
+        afterCommit(tenantId, index -> index.add(summary));
+    }
+
+    /**
+     * Removes the user once the current transaction commits
+     *
+     * @param tenantId tenant of the user
+     * @param userId user id
+     */
+    public void remove(String tenantId, String userId) {
+        afterCommit(tenantId, index -> index.remove(userId));
+    }
+
+    /**
+     * Drops the index of the tenant once the current transaction commits, it is rebuilt on the next search
+     *
+     * @param tenantId tenant id
+     */
+    public void invalidate(String tenantId) {
+        Runnable invalidation = () -> {
+            synchronized (tenants) {
+                tenants.remove(tenantId);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    invalidation.run();
+                }
+            });
+        }
+        else {
+            invalidation.run();
+        }
+    }
+
+    private void afterCommit(String tenantId, Consumer<TenantIndex> change) {
+        Runnable update = () -> {
+            TenantIndex index;
+            synchronized (tenants) {
+                // an index which is not loaded picks the change up when it is built
+                index = tenants.get(tenantId);
+            }
+            if (index != null) {
+                change.accept(index);
+            }
+        };
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+                @Override
+                public void afterCommit() {
+                    update.run();
+                }
+            });
+        }
+        else {
+            update.run();
+        }
+    }
+
+    private static String normalize(String value) {
+        return value == null ? "" : value.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Set<String> trigrams(String term) {
+        Set<String> trigrams = new HashSet<>();
+        for (int i = 0; i + 3 <= term.length(); i++) {
+            trigrams.add(term.substring(i, i + 3));
+        }
+        return trigrams;
+    }
+
+    private final class TenantIndex {
+        private final ReadWriteLock lock = new ReentrantReadWriteLock();
+        private final List<UserSummary> documents = new ArrayList<>();
+        private final Map<String, Integer> byUserId = new HashMap<>();
+        private final NavigableMap<String, Postings> terms = new TreeMap<>();
+        private final Map<String, Postings> trigrams = new HashMap<>();
+        private boolean built;
+        private boolean oversized;
+        private int removed;
+        /**
+         * Documents including removed ones until they are compacted, read without the lock
+         */
+        private volatile int size;
+
+        /**
+         * @return false if the tenant has too many users to be indexed
+         */
+        private boolean build(String tenantId) {
+            lock.readLock().lock();
+            try {
+                if (built) {
+                    return !oversized;
+                }
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+
+            lock.writeLock().lock();
+            try {
+                if (!built) {
+                    // changes committed while building wait for the lock and are applied on top
+                    userRepository.streamProjected(tenantId, FIELDS, 1000, row -> {
+                        if (documents.size() < maxTenantSize) {
+                            add(new UserSummary((String) row.get("id"), (String) row.get("email"),
+                                    (String) row.get("firstName"), (String) row.get("lastName")));
+                        }
+                        else {
+                            oversized = true;
+                        }
+                    });
+                    if (oversized) {
+                        clear();
+                    }
+                    built = true;
+                }
+                return !oversized;
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private List<UserSummary> search(String query, int limit) {
+            if (query.isEmpty()) {
+                return Collections.emptyList();
+            }
+
+            lock.readLock().lock();
+            try {
+                Set<Integer> hits = new LinkedHashSet<>();
+                for (Postings postings : terms.subMap(query, true, query + Character.MAX_VALUE, true).values()) {
+                    if (collect(postings, hits, limit, null)) {
+                        break;
+                    }
+                }
+
+                if (hits.size() < limit && query.length() >= 3) {
+                    collect(candidates(query), hits, limit, query);
+                }
+
+                return hits.stream().map(documents::get).collect(Collectors.toList());
+            }
+            finally {
+                lock.readLock().unlock();
+            }
+        }
+
+        /**
+         * @return true once the limit is reached
+         */
+        private boolean collect(Postings postings, Set<Integer> hits, int limit, String infix) {
+            for (int i = 0; i < postings.size; i++) {
+                int document = postings.documents[i];
+                UserSummary summary = documents.get(document);
+                if (summary != null && (infix == null || contains(summary, infix))) {
+                    hits.add(document);
+                    if (hits.size() >= limit) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * @return documents containing every trigram of the query, a superset of the infix matches
+         */
+        private Postings candidates(String query) {
+            List<Postings> lists = new ArrayList<>();
+            for (String trigram : trigrams(query)) {
+                Postings postings = trigrams.get(trigram);
+                if (postings == null) {
+                    return Postings.EMPTY;
+                }
+                lists.add(postings);
+            }
+            lists.sort(Comparator.comparingInt(postings -> postings.size));
+
+            Postings result = lists.get(0);
+            for (int i = 1; i < lists.size() && result.size > 0; i++) {
+                result = result.intersect(lists.get(i));
+            }
+            return result;
+        }
+
+        private boolean contains(UserSummary summary, String infix) {
+            return normalize(summary.getEmail()).contains(infix)
+                    || normalize(summary.getFirstName()).contains(infix)
+                    || normalize(summary.getLastName()).contains(infix);
+        }
+
+        private void add(UserSummary summary) {
+            lock.writeLock().lock();
+            try {
+                if (oversized) {
+                    return;
+                }
+                remove(summary.getId());
+
+                int document = documents.size();
+                documents.add(summary);
+                size = documents.size();
+                byUserId.put(summary.getId(), document);
+
+                Set<String> documentTrigrams = new HashSet<>();
+                for (String term : Arrays.asList(summary.getEmail(), summary.getFirstName(), summary.getLastName())) {
+                    String normalized = normalize(term);
+                    if (!normalized.isEmpty()) {
+                        terms.computeIfAbsent(normalized, key -> new Postings()).add(document);
+                        documentTrigrams.addAll(trigrams(normalized));
+                    }
+                }
+                documentTrigrams.forEach(trigram -> trigrams.computeIfAbsent(trigram, key -> new Postings()).add(document));
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void remove(String userId) {
+            lock.writeLock().lock();
+            try {
+                Integer document = byUserId.remove(userId);
+                if (document == null) {
+                    return;
+                }
+
+                // postings keep the document number, searches skip removed documents
+                documents.set(document, null);
+                if (++removed > 1024 && removed > documents.size() / 2) {
+                    compact();
+                }
+            }
+            finally {
+                lock.writeLock().unlock();
+            }
+        }
+
+        private void compact() {
+            List<UserSummary> live = documents.stream().filter(summary -> summary != null).collect(Collectors.toList());
+            clear();
+            live.forEach(this::add);
+        }
+
+        private void clear() {
+            documents.clear();
+            byUserId.clear();
+            terms.clear();
+            trigrams.clear();
+            removed = 0;
+            size = 0;
+        }
+    }
+
+    /**
+     * Growable array of ascending document numbers
+     */
+    private static final class Postings {
+        private static final Postings EMPTY = new Postings();
+
+        private int[] documents = new int[2];
+        private int size;
+
+        private void add(int document) {
+            // documents are numbered in insertion order so postings stay sorted
+            if (size > 0 && documents[size - 1] == document) {
+                return;
+            }
+            if (size == documents.length) {
+                documents = Arrays.copyOf(documents, size * 2);
+            }
+            documents[size++] = document;
+        }
+
+        private Postings intersect(Postings other) {
+            Postings result = new Postings();
+            int i = 0;
+            int j = 0;
+            while (i < size && j < other.size) {
+                if (documents[i] < other.documents[j]) {
+                    i++;
+                }
+                else if (documents[i] > other.documents[j]) {
+                    j++;
+                }
+                else {
+                    result.add(documents[i]);
+                    i++;
+                    j++;
+                }
+            }
+            return result;
+        }
+    }
+}
@@ -1,22 +1,45 @@
 package com.pivotenergy.services;
 
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.ObjectReader;
+import com.pivotenergy.domain.ChangeEvent;
 import com.pivotenergy.domain.Role;
 import com.pivotenergy.domain.User;
 import com.pivotenergy.exceptions.PivotEntityNotFoundException;
+import com.pivotenergy.exceptions.PivotInvalidRequestException;
+import com.pivotenergy.model.request.RoleBatchRequest;
+import com.pivotenergy.model.response.RoleBatchResult;
+import com.pivotenergy.model.response.RoleView;
+import com.pivotenergy.model.response.UserLookupResult;
+import com.pivotenergy.model.response.UserSummary;
+import com.pivotenergy.model.response.UserView;
 import com.pivotenergy.repositories.RoleRepository;
+import com.pivotenergy.repositories.UserRefreshTokenRepository;
 import com.pivotenergy.repositories.UserRepository;
 import com.pivotenergy.security.model.UserSession;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.security.access.AccessDeniedException;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.Set;
 
 import static com.pivotenergy.domain.Role.Action.*;
@@ -24,100 +47,294 @@ import static com.pivotenergy.domain.Role.Scope.*;
 import static com.pivotenergy.domain.Role.Target.*;
 
 @Service
-public class UserService extends BaseService<User, UserRepository> {
+public class UserService extends BaseService<User, UserView, UserRepository> {
+    /**
+     * Properties which are not allowed to be updated by the user
+     */
+    private static final Set<String> USER_PATCH_DENIED = Collections.unmodifiableSet(new HashSet<>(Arrays.asList(
+            "id", "groupId", "type", "enabled", "locked", "expired", "failedLoginAttempts", "lastLoginAttempt",
+            "roles", "password", "group", "deleted", "version", "createdAt", "createdBy", "updatedAt", "updatedBy")));
+
+    /**
+     * Properties which are not allowed to be updated by admin or support users
+     */
+    private static final Set<String> ADMIN_OR_SUPPORT_PATCH_DENIED = Collections.unmodifiableSet(new HashSet<>(
+            Arrays.asList("id", "version", "createdAt", "createdBy", "updatedAt", "updatedBy")));
+
+    static final PatchApplier<User> PATCH = PatchApplier.builder(User.class)
+            .string("locale", User::setLocale)
+            .string("email", User::setEmail)
+            .string("firstName", User::setFirstName)
+            .string("lastName", User::setLastName)
+            .enumeration("type", User.Type.class, User::setType)
+            .bool("enabled", User::setEnabled)
+            .bool("locked", User::setLocked)
+            .bool("expired", User::setExpired)
+            .integer("failedLoginAttempts", User::setFailedLoginAttempts)
+            .date("lastLoginAttempt", User::setLastLoginAttempt)
+            .string("password", User::setPassword)
+            // roles, tenant and deletion are managed through their own endpoints
+            .ignore("roles", "group", "groupId", "deleted")
+            .build();
+
+    static final PatchApplier<User> OWNER_PATCH = PATCH.without(USER_PATCH_DENIED);
+    static final PatchApplier<User> ADMIN_OR_SUPPORT_PATCH = PATCH.without(ADMIN_OR_SUPPORT_PATCH_DENIED);
+
+    /**
+     * Rows per flush and ids per IN clause of the batch role operations and lookups
+     */
+    private static final int BATCH_SIZE = 500;
+
+    /**
+     * Largest number of search results returned at once
+     */
+    private static final int MAX_SEARCH_RESULTS = 100;
+
     private RoleRepository roleRepository;
+    private UserRefreshTokenRepository refreshTokenRepository;
+    private SecondLevelCache secondLevelCache;
+    private UserSearchIndex searchIndex;
+    private UserLookupCache lookupCache;
+    private Outbox outbox;
+    private PasswordHasher passwordHasher;
+    private int maxLookupIds;
+
+    @PersistenceContext
+    private EntityManager entityManager;
 
     @Autowired
-    UserService(UserRepository userRepository, RoleRepository roleRepository) {
+    UserService(UserRepository userRepository, RoleRepository roleRepository,
+                UserRefreshTokenRepository refreshTokenRepository, SecondLevelCache secondLevelCache,
+                UserSearchIndex searchIndex, UserLookupCache lookupCache, Outbox outbox,
+                PasswordHasher passwordHasher, @Value("${pivot.lookup.max-ids:500}") int maxLookupIds) {
         super(User.class, userRepository);
         this.roleRepository = roleRepository;
+        this.refreshTokenRepository = refreshTokenRepository;
+        this.secondLevelCache = secondLevelCache;
+        this.searchIndex = searchIndex;
+        this.lookupCache = lookupCache;
+        this.outbox = outbox;
+        this.passwordHasher = passwordHasher;
+        this.maxLookupIds = maxLookupIds;
     }
 
     @Override
-    @Transactional
-    public User patch(String id, Map<String, Object> patch) throws Throwable {
+    UserView view(User user) {
+        return UserView.of(user);
+    }
 
-        User incumbent = getById(id);
+    @Override
+    Slice<User> findSlice(Pageable pageable) {
+        return repository.findAllSliced(pageable);
+    }
 
-        if(isOwnerRequest(incumbent) || isAdminOrSupportRequest(incumbent)) {
-            if(isAdminOrSupportRequest(incumbent)) {
-                sanitizeForAdminOrSupport(patch);
-            }
-            else {
-                sanitizeForUser(patch);
+    @Override
+    Optional<Long> findVersion(String id) {
+        return repository.findVersionById(id);
+    }
+
+    @Override
+    String countKey() {
+        return currentSession().getTenantId();
+    }
+
+    /**
+     * Returns only the requested properties of the users of the current tenant
+     *
+     * @param pageable page request
+     * @param mode list mode
+     * @param fields requested properties
+     * @return Page or Slice of property maps
+     */
+    @Transactional(readOnly = true)
+    public Slice<Map<String, Object>> getCollection(Pageable pageable, ListMode mode, Collection<String> fields) {
+        return withTotal(repository.findAllProjected(currentSession().getTenantId(), fields, pageable), pageable, mode);
+    }
+
+    /**
+     * Returns only the requested properties of a user of the current tenant
+     *
+     * @param id user id
+     * @param fields requested properties
+     * @return property map
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Object> getById(String id, Collection<String> fields) {
+        return repository.findProjectedById(currentSession().getTenantId(), id, fields)
+                .orElseThrow(new PivotEntityNotFoundException(User.class, id));
+    }
+
+    /**
+     * Typeahead search over email, first and last name of the users of the current tenant
+     *
+     * @param query prefix, or any part with at least 3 characters
+     * @param limit maximum number of results
+     * @return matching users
+     */
+    @Transactional(readOnly = true)
+    public List<UserSummary> search(String query, int limit) {
+        String tenantId = currentSession().getTenantId();
+        int max = Math.max(1, Math.min(limit, MAX_SEARCH_RESULTS));
+
+        // tenants too large for the index are answered with an index friendly prefix query
+        return searchIndex.search(tenantId, query, max).orElseGet(() -> repository.searchByPrefix(tenantId,
+                query.trim().replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_") + "%",
+                PageRequest.of(0, max)));
+    }
+
+    /**
+     * Resolves many users of the current tenant at once. Users cached by a recent lookup are served
+     * from the cache, the others are fetched with one query per chunk of ids.
+     *
+     * @param ids user ids, duplicates are answered twice
+     * @return one entry per id in request order, ids without a user of the tenant are marked not found
+     * @throws PivotInvalidRequestException if more ids than configured are requested
+     */
+    @Transactional(readOnly = true)
+    public UserLookupResult lookup(List<String> ids) {
+        if (ids.size() > maxLookupIds) {
+            throw new PivotInvalidRequestException(
+                    String.format("at most %d ids can be resolved at once, %d were requested", maxLookupIds, ids.size()));
+        }
+
+        String tenantId = currentSession().getTenantId();
+        Map<String, UserView> views = new HashMap<>();
+        Set<String> missing = new LinkedHashSet<>();
+        for (String id : ids) {
+            UserView cached = lookupCache.get(tenantId, id);
+            if (cached != null) {
+                views.put(id, cached);
+            } else {
+                missing.add(id);
             }
+        }
 
-            ObjectMapper objectMapper = new ObjectMapper();
-            ObjectReader objectReader = objectMapper.readerForUpdating(incumbent);
-            User updated = objectReader.readValue(objectMapper.writeValueAsString(patch));
+        for (List<String> chunk : chunked(missing)) {
+            for (User user : repository.findByIdIn(chunk)) {
+                UserView view = view(user);
+                views.put(view.getId(), view);
+                lookupCache.put(tenantId, view);
+            }
+        }
 
-            return repository.save(updated);
+        List<UserLookupResult.Entry> results = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            UserView view = views.get(id);
+            results.add(view != null ? UserLookupResult.Entry.found(view) : UserLookupResult.Entry.notFound(id));
         }
+        return new UserLookupResult(results);
+    }
 
-        String message = "Either this resource does not belong to you or you do not have the " +
-                "privileges required to modify this resource.";
-        throw new AccessDeniedException("Request Denied", new Throwable(message));
+    @Override
+    @Transactional
+    public User create(User user) {
+        String tenantId = currentSession().getTenantId();
+        User created = super.create(user);
+        searchIndex.put(tenantId, created);
+        outbox.record(tenantId, ChangeEvent.Type.USER, created.getId(), ChangeEvent.Operation.CREATED);
+        return created;
+    }
+
+    @Override
+    @Transactional
+    public User update(String id, User update, Long expectedVersion) throws Throwable {
+        User updated = super.update(id, update, expectedVersion);
+        return indexed(updated);
     }
 
     /**
-     * Removes entries from map which are not allowed to be updated by the user
-     *
-     * @param map patch data
+     * bcrypt takes tens of milliseconds, the password is hashed before the transaction takes a connection
      */
-    private void sanitizeForUser(Map<String, Object> map) {
-        map.remove("id");
-        map.remove("groupId");
-        map.remove("type");
-        map.remove("enabled");
-        map.remove("locked");
-        map.remove("expired");
-        map.remove("failedLoginAttempts");
-        map.remove("lastLoginAttempt");
-        map.remove("roles");
-        map.remove("password");
-        map.remove("group");
-        map.remove("deleted");
-        map.remove("createdAt");
-        map.remove("createdBy");
-        map.remove("updatedAt");
-        map.remove("updatedBy");
+    @Override
+    User prepare(User user) {
+        return passwordHasher.hashPassword(user);
     }
 
-    private boolean isOwnerRequest(User user) {
-        UserSession session = (UserSession) SecurityContextHolder
-                .getContext()
-                .getAuthentication()
-                .getPrincipal();
+    @Override
+    void retain(User entity, User update) {
+        // replacements usually come from a representation without the password, they keep the current one
+        if (update.getPassword() == null) {
+            update.setEncodedPassword(entity.getPassword());
+        }
+    }
 
-        return user.getId().equals(session.getId()) && user.getGroup().getId().equals(session.getTenantId());
+    @Override
+    public UserView patchView(String id, Map<String, Object> patch, Long expectedVersion) throws Throwable {
+        String hash = hashPatchedPassword(patch);
+        return inWriteTransaction(() -> flushedView(patch(id, patch, expectedVersion, hash)));
+    }
+
+    @Override
+    public User patch(String id, Map<String, Object> patch, Long expectedVersion) throws Throwable {
+        String hash = hashPatchedPassword(patch);
+        return inWriteTransaction(() -> patch(id, patch, expectedVersion, hash));
     }
 
     /**
-     * Removes entries from map which are not allowed to be updated by the user
-     *
-     * @param map patch data
+     * @param patch properties to change
+     * @return hash of the patched password, only for callers who may change passwords at all
      */
-    private void sanitizeForAdminOrSupport(Map<String, Object> map) {
-        map.remove("id");
-        map.remove("createdAt");
-        map.remove("createdBy");
-        map.remove("updatedAt");
-        map.remove("updatedBy");
+    private String hashPatchedPassword(Map<String, Object> patch) {
+        Object password = patch.get("password");
+        return password instanceof String && isAdminOrSupportSession(currentSession())
+                ? passwordHasher.encode((String) password)
+                : null;
     }
 
-    private boolean isAdminOrSupportRequest(User user) {
-        UserSession session;
-        session = (UserSession) SecurityContextHolder
+    private User patch(String id, Map<String, Object> patch, Long expectedVersion, String hash) throws Throwable {
+        User incumbent = getById(id);
+        checkVersion(incumbent, expectedVersion);
+
+        if(isAdminOrSupportRequest(incumbent)) {
+            User patched = ADMIN_OR_SUPPORT_PATCH.apply(incumbent, patch);
+            if (patched.getRawPassword() != null) {
+                patched.setEncodedPassword(hash);
+            }
+            return indexed(repository.save(patched));
+        }
+
+        if(isOwnerRequest(incumbent)) {
+            return indexed(repository.save(OWNER_PATCH.apply(incumbent, patch)));
+        }
+
+        String message = "Either this resource does not belong to you or you do not have the " +
+                "privileges required to modify this resource.";
+        throw new AccessDeniedException("Request Denied", new Throwable(message));
+    }
+
+    private User indexed(User user) {
+        String tenantId = currentSession().getTenantId();
+        searchIndex.put(tenantId, user);
+        lookupCache.evict(tenantId, user.getId());
+        outbox.record(tenantId, ChangeEvent.Type.USER, user.getId(), ChangeEvent.Operation.UPDATED);
+        return user;
+    }
+
+    private static UserSession currentSession() {
+        return (UserSession) SecurityContextHolder
                 .getContext()
                 .getAuthentication()
                 .getPrincipal();
+    }
+
+    private boolean isOwnerRequest(User user) {
+        UserSession session = currentSession();
+
+        return user.getId().equals(session.getId()) && user.getGroup().getId().equals(session.getTenantId());
+    }
+
+    private boolean isAdminOrSupportRequest(User user) {
+        UserSession session = currentSession();
+
+        return user.getGroup().getId().equals(session.getTenantId()) && isAdminOrSupportSession(session);
+    }
 
+    private static boolean isAdminOrSupportSession(UserSession session) {
         Set<String> roles = new HashSet<>();
         roles.addAll(getSupportRoles());
         roles.addAll(getAdministrativeRoles());
 
-        return user.getGroup().getId().equals(session.getTenantId())
-                && (session.getType().equals(UserSession.Type.ADMIN) ||
+        return (session.getType().equals(UserSession.Type.ADMIN) ||
                 session.getType().equals(UserSession.Type.SUPPORT)) &&
                 session.getAuthorities().stream().anyMatch(x -> roles.contains(x.getAuthority()));
     }
@@ -125,22 +342,29 @@ public class UserService extends BaseService<User, UserRepository> {
     @Override
     @Transactional
     public void softDelete(String id) {
-        if (repository.existsById(id)) {
-            repository.softDeleteById(id);
-        } else {
+        if (repository.softDeleteById(id) == 0) {
             throw new PivotEntityNotFoundException(User.class, id);
         }
+
+        String tenantId = currentSession().getTenantId();
+        refreshTokenRepository.deleteByUserId(id);
+        searchIndex.remove(tenantId, id);
+        lookupCache.evict(tenantId, id);
+        outbox.record(tenantId, ChangeEvent.Type.USER, id, ChangeEvent.Operation.DELETED);
     }
 
     @Override
     @Transactional
     @PreAuthorize("hasRole('ROLE_SUPPORT_HARD_DELETE_USER')")
     public void hardDelete(String id) {
-        if (repository.existsById(id)) {
-            repository.deleteById(id);
-        } else {
+        if (repository.hardDeleteById(id) == 0) {
             throw new PivotEntityNotFoundException(User.class, id);
         }
+
+        String tenantId = currentSession().getTenantId();
+        searchIndex.remove(tenantId, id);
+        lookupCache.evict(tenantId, id);
+        outbox.record(tenantId, ChangeEvent.Type.USER, id, ChangeEvent.Operation.DELETED);
     }
 
 
@@ -172,22 +396,163 @@ public class UserService extends BaseService<User, UserRepository> {
 
 
     @Transactional
-    public Role addRole(String id, Role role) throws Throwable {
+    public RoleView addRole(String id, Role role) throws Throwable {
         User user = getById(id);
         role.setRole(role.getScope(), role.getAction(), role.getTarget())
                 .setUser(user);
 
-        return roleRepository.save(role);
+        Role saved = roleRepository.save(role);
+        // the roles are part of the user's ETag
+        entityManager.lock(user, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        secondLevelCache.evictUserRoles(id);
+        rolesChanged(id);
+        return RoleView.of(saved);
     }
 
     @Transactional
     public void deleteRole(final String id, final String roleId) throws Throwable {
-        User user = getById(id);
-        Role role = user.getRoles()
-                .stream()
-                .filter(x -> x.getId().equals(roleId)).findFirst()
-                .orElseThrow(new PivotEntityNotFoundException(Role.class, id));
+        if (roleRepository.deleteByIdAndUserId(roleId, id) == 0) {
+            throw new PivotEntityNotFoundException(Role.class, roleId);
+        }
+
+        repository.incrementVersions(Collections.singletonList(id), currentSession().getTenantId());
+        secondLevelCache.evictRole(roleId);
+        secondLevelCache.evictUserRoles(id);
+        rolesChanged(id);
+    }
+
+    /**
+     * Roles are part of the user, a role change is published as a change of the user. Callers have
+     * increased the version of the user already.
+     *
+     * @param userId user id
+     */
+    private void rolesChanged(String userId) {
+        String tenantId = currentSession().getTenantId();
+        lookupCache.evict(tenantId, userId);
+        outbox.record(tenantId, ChangeEvent.Type.USER, userId, ChangeEvent.Operation.UPDATED);
+    }
+
+    /**
+     * Grants the roles to all users of the request, roles a user already has are skipped
+     *
+     * @param request users and roles
+     * @return number of granted and skipped roles
+     */
+    @Transactional
+    public RoleBatchResult grantRoles(RoleBatchRequest request) {
+        String tenantId = currentSession().getTenantId();
+        List<List<String>> userIds = requireUsers(request.getUserIds());
+        Map<String, RoleBatchRequest.Triple> roles = byName(request.getRoles());
+
+        Set<String> existing = new HashSet<>();
+        for (List<String> ids : userIds) {
+            roleRepository.findUserRoles(ids, roles.keySet()).forEach(row -> existing.add(row[0] + ":" + row[1]));
+        }
+
+        int granted = 0;
+        for (List<String> ids : userIds) {
+            for (String userId : ids) {
+                // only the foreign key is needed, the user is never loaded
+                User user = entityManager.getReference(User.class, userId);
+                for (Map.Entry<String, RoleBatchRequest.Triple> role : roles.entrySet()) {
+                    if (existing.contains(userId + ":" + role.getKey())) {
+                        continue;
+                    }
+
+                    RoleBatchRequest.Triple triple = role.getValue();
+                    entityManager.persist(new Role()
+                            .setRole(triple.getScope(), triple.getAction(), triple.getTarget())
+                            .setUser(user, tenantId));
+                    if (++granted % BATCH_SIZE == 0) {
+                        entityManager.flush();
+                        entityManager.clear();
+                    }
+                }
+            }
+            repository.incrementVersions(ids, tenantId);
+        }
+
+        secondLevelCache.evictAllUserRoles();
+        lookupCache.invalidate(tenantId);
+        request.getUserIds().forEach(userId ->
+                outbox.record(tenantId, ChangeEvent.Type.USER, userId, ChangeEvent.Operation.UPDATED));
+        int requested = request.getUserIds().size() * roles.size();
+        return new RoleBatchResult(request.getUserIds().size(), granted, requested - granted);
+    }
+
+    /**
+     * Revokes the roles from all users of the request with one delete and one version update per chunk
+     * of users
+     *
+     * @param request users and roles
+     * @return number of revoked roles and of roles the users did not have
+     */
+    @Transactional
+    public RoleBatchResult revokeRoles(RoleBatchRequest request) {
+        List<List<String>> userIds = requireUsers(request.getUserIds());
+        Map<String, RoleBatchRequest.Triple> roles = byName(request.getRoles());
+
+        String tenantId = currentSession().getTenantId();
+        int revoked = 0;
+        for (List<String> ids : userIds) {
+            revoked += roleRepository.deleteByUserIdInAndRoleIn(ids, roles.keySet());
+            repository.incrementVersions(ids, tenantId);
+        }
+
+        secondLevelCache.evictAllUserRoles();
+        lookupCache.invalidate(tenantId);
+        request.getUserIds().forEach(userId ->
+                outbox.record(tenantId, ChangeEvent.Type.USER, userId, ChangeEvent.Operation.UPDATED));
+        int requested = request.getUserIds().size() * roles.size();
+        return new RoleBatchResult(request.getUserIds().size(), revoked, requested - revoked);
+    }
+
+    /**
+     * Checks that all users belong to the current tenant with one query per chunk
+     *
+     * @param userIds requested user ids
+     * @return user ids in chunks small enough for an IN clause
+     * @throws PivotEntityNotFoundException if any user is not found
+     */
+    private List<List<String>> requireUsers(Collection<String> userIds) {
+        List<List<String>> chunks = chunked(userIds);
+
+        Set<String> missing = new LinkedHashSet<>(userIds);
+        for (List<String> ids : chunks) {
+            missing.removeAll(repository.findIdsByIdIn(ids));
+        }
+        if (!missing.isEmpty()) {
+            throw new PivotEntityNotFoundException(User.class, String.join(",", missing));
+        }
+
+        return chunks;
+    }
+
+    /**
+     * @param ids user ids
+     * @return the ids in chunks of at most {@value #BATCH_SIZE}
+     */
+    private static List<List<String>> chunked(Collection<String> ids) {
+        List<List<String>> chunks = new ArrayList<>();
+        List<String> chunk = new ArrayList<>(BATCH_SIZE);
+        for (String id : ids) {
+            chunk.add(id);
+            if (chunk.size() == BATCH_SIZE) {
+                chunks.add(chunk);
+                chunk = new ArrayList<>(BATCH_SIZE);
+            }
+        }
+        if (!chunk.isEmpty()) {
+            chunks.add(chunk);
+        }
+
+        return chunks;
+    }
 
-        roleRepository.delete(role);
+    private static Map<String, RoleBatchRequest.Triple> byName(Collection<RoleBatchRequest.Triple> roles) {
+        Map<String, RoleBatchRequest.Triple> byName = new LinkedHashMap<>();
+        roles.forEach(role -> byName.put(role.getRole(), role));
+        return byName;
     }
 }
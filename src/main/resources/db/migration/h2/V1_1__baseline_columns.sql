@@ -0,0 +1,13 @@
+-- Columns of the baseline schema which hibernate schema updates of earlier releases never created,
+-- see the MySQL migration. H2 guards the changes itself.
+
+ALTER TABLE user_group ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+ALTER TABLE user ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+
+UPDATE user_group SET version = 0 WHERE version IS NULL;
+UPDATE user SET version = 0 WHERE version IS NULL;
+
+ALTER TABLE user_group ALTER COLUMN version SET DEFAULT 0;
+ALTER TABLE user_group ALTER COLUMN version SET NOT NULL;
+ALTER TABLE user ALTER COLUMN version SET DEFAULT 0;
+ALTER TABLE user ALTER COLUMN version SET NOT NULL;
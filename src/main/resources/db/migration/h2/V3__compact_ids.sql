@@ -0,0 +1,3 @@
+-- Keeps the version history in step with the MySQL migration, which narrows ids to 36 ascii characters.
+-- The in-memory test database has no storage to save, its id columns stay as they are.
+SELECT 1;
@@ -0,0 +1,16 @@
+-- Outbox of changes to users and groups, see the MySQL migration.
+
+CREATE TABLE IF NOT EXISTS change_event (
+    id                    varchar(36) NOT NULL,
+    sequence_number       bigint,
+    group_id              varchar(36) NOT NULL,
+    entity_type           varchar(16) NOT NULL,
+    entity_id             varchar(36) NOT NULL,
+    operation             varchar(16) NOT NULL,
+    created_at            timestamp NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_change_event_sequence_number UNIQUE (sequence_number)
+);
+
+CREATE INDEX idx_change_event_group_id_sequence_number ON change_event (group_id, sequence_number);
+CREATE INDEX idx_change_event_created_at ON change_event (created_at);
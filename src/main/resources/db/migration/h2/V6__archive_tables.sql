@@ -0,0 +1,76 @@
+-- Deletion time and archive tables, see the MySQL migration.
+
+ALTER TABLE user ADD COLUMN deleted_at timestamp;
+ALTER TABLE user_group ADD COLUMN deleted_at timestamp;
+
+UPDATE user SET deleted_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE deleted = TRUE;
+UPDATE user_group SET deleted_at = COALESCE(updated_at, CURRENT_TIMESTAMP) WHERE deleted = TRUE;
+
+CREATE INDEX idx_user_deleted_at ON user (deleted_at);
+CREATE INDEX idx_user_group_deleted_at ON user_group (deleted_at);
+
+CREATE TABLE IF NOT EXISTS user_group_archive (
+    id                    varchar(36) NOT NULL,
+    created_at            timestamp,
+    created_by            varchar(255),
+    updated_at            timestamp,
+    updated_by            varchar(255),
+    deleted               boolean,
+    name                  varchar(255),
+    logo_image            varchar(255),
+    company_name          varchar(255),
+    company_website       varchar(255),
+    contact_email         varchar(255),
+    phone_number          varchar(20),
+    type                  varchar(128) NOT NULL,
+    version               bigint NOT NULL DEFAULT 0,
+    deleted_at            timestamp,
+    archived_at           timestamp NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE TABLE IF NOT EXISTS user_archive (
+    id                    varchar(36) NOT NULL,
+    created_at            timestamp,
+    created_by            varchar(255),
+    updated_at            timestamp,
+    updated_by            varchar(255),
+    deleted               boolean,
+    group_id              varchar(36),
+    locale                varchar(255),
+    email                 varchar(255),
+    first_name            varchar(255),
+    last_name             varchar(255),
+    type                  varchar(255),
+    enabled               boolean,
+    locked                boolean,
+    expired               boolean,
+    failed_login_attempts integer,
+    last_login_attempt    timestamp,
+    password              varchar(255),
+    version               bigint NOT NULL DEFAULT 0,
+    deleted_at            timestamp,
+    archived_at           timestamp NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_user_archive_group_id ON user_archive (group_id);
+
+CREATE TABLE IF NOT EXISTS role_archive (
+    id                    varchar(36) NOT NULL,
+    created_at            timestamp,
+    created_by            varchar(255),
+    updated_at            timestamp,
+    updated_by            varchar(255),
+    deleted               boolean,
+    group_id              varchar(36),
+    role                  varchar(128) NOT NULL,
+    scope                 varchar(255),
+    action                varchar(255),
+    target                varchar(255),
+    user_id               varchar(36),
+    archived_at           timestamp NOT NULL,
+    PRIMARY KEY (id)
+);
+
+CREATE INDEX idx_role_archive_user_id ON role_archive (user_id);
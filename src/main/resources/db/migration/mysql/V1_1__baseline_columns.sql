@@ -0,0 +1,46 @@
+-- Columns of the baseline schema which hibernate schema updates of earlier releases never created.
+-- V1 leaves the tables of such databases untouched, so the columns are added here. Each change is
+-- guarded on information_schema and skipped where the column is already in place, as on new databases.
+
+-- optimistic locking of users and groups, existing rows start at version 0
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+        'ALTER TABLE user_group ADD COLUMN version bigint NOT NULL DEFAULT 0',
+        'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'user_group' AND column_name = 'version');
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SET @ddl = (SELECT IF(COUNT(*) = 0,
+        'ALTER TABLE user ADD COLUMN version bigint NOT NULL DEFAULT 0',
+        'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'user' AND column_name = 'version');
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- a version column added by a schema update may allow NULL, hibernate cannot increment a NULL version
+UPDATE user_group SET version = 0 WHERE version IS NULL;
+UPDATE user SET version = 0 WHERE version IS NULL;
+
+SET @ddl = (SELECT IF(COUNT(*) = 1,
+        'ALTER TABLE user_group MODIFY version bigint NOT NULL DEFAULT 0',
+        'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'user_group' AND column_name = 'version'
+        AND (is_nullable = 'YES' OR column_default IS NULL));
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+SET @ddl = (SELECT IF(COUNT(*) = 1,
+        'ALTER TABLE user MODIFY version bigint NOT NULL DEFAULT 0',
+        'DO 0')
+    FROM information_schema.columns
+    WHERE table_schema = DATABASE() AND table_name = 'user' AND column_name = 'version'
+        AND (is_nullable = 'YES' OR column_default IS NULL));
+PREPARE statement FROM @ddl;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
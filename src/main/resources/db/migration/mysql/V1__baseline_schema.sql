@@ -0,0 +1,84 @@
+-- Baseline schema of the account service (MySQL).
+-- Tables are only created when missing. Databases created by hibernate schema updates keep their tables,
+-- V1_1 adds the columns those tables lack.
+
+CREATE TABLE IF NOT EXISTS user_group (
+    id                    varchar(255) NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    name                  varchar(255),
+    logo_image            varchar(255),
+    company_name          varchar(255),
+    company_website       varchar(255),
+    contact_email         varchar(255),
+    phone_number          varchar(20),
+    type                  varchar(128) NOT NULL,
+    version               bigint NOT NULL DEFAULT 0,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_user_group_logo_image UNIQUE (logo_image),
+    CONSTRAINT uk_user_group_company_name UNIQUE (company_name),
+    CONSTRAINT uk_user_group_company_website UNIQUE (company_website),
+    CONSTRAINT uk_user_group_contact_email UNIQUE (contact_email),
+    CONSTRAINT uk_user_group_phone_number UNIQUE (phone_number)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS user (
+    id                    varchar(255) NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    group_id              varchar(255),
+    locale                varchar(255),
+    email                 varchar(255),
+    first_name            varchar(255),
+    last_name             varchar(255),
+    type                  varchar(255),
+    enabled               bit,
+    locked                bit,
+    expired               bit,
+    failed_login_attempts integer,
+    last_login_attempt    datetime(6),
+    password              varchar(255),
+    version               bigint NOT NULL DEFAULT 0,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_user_email UNIQUE (email),
+    CONSTRAINT fk_user_group FOREIGN KEY (group_id) REFERENCES user_group (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS role (
+    id                    varchar(255) NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    group_id              varchar(255),
+    role                  varchar(128) NOT NULL,
+    scope                 varchar(255),
+    action                varchar(255),
+    target                varchar(255),
+    user_id               varchar(255),
+    PRIMARY KEY (id),
+    CONSTRAINT fk_role_user FOREIGN KEY (user_id) REFERENCES user (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS user_refresh_token (
+    id                    varchar(255) NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    group_id              varchar(255),
+    token                 varchar(255) NOT NULL,
+    expires_at            datetime(6) NOT NULL,
+    user_id               varchar(255),
+    PRIMARY KEY (id),
+    CONSTRAINT uk_user_refresh_token_token UNIQUE (token),
+    CONSTRAINT fk_user_refresh_token_user FOREIGN KEY (user_id) REFERENCES user (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,18 @@
+-- Indexes matching the predicates of the repository queries, see the @Query annotations of
+-- UserRepository, GroupRepository, RoleRepository and UserRefreshTokenRepository.
+
+-- users of a tenant: findAll, findAllSliced, count, findById, findVersionById, existsById, the
+-- projections and exports, keyset pages of group members (group_id, deleted, id > ?) ordered by id
+CREATE INDEX idx_user_group_deleted_id ON user (group_id, deleted, id);
+
+-- roles of a tenant: count, findById, existsById, deleteById
+CREATE INDEX idx_role_group_deleted_id ON role (group_id, deleted, id);
+
+-- batch role grants and revocations: user_id IN (..) AND role IN (..)
+CREATE INDEX idx_role_user_role ON role (user_id, role);
+
+-- groups: findAll, findAllSliced and count filter on deleted only
+CREATE INDEX idx_group_deleted_id ON user_group (deleted, id);
+
+-- purgeExpiredTokens: expires_at < CURRENT_TIMESTAMP
+CREATE INDEX idx_user_refresh_token_expires_at ON user_refresh_token (expires_at);
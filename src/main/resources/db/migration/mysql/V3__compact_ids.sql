@@ -0,0 +1,28 @@
+-- Narrows ids and the columns referencing them to 36 ascii characters with a binary collation.
+-- New ids are time-ordered UUIDs (see TimeOrderedIdGenerator) in the same text form as the random
+-- UUIDs of existing rows, so existing rows keep their ids and no key has to be rewritten.
+--
+-- Keys shrink from up to 1020 bytes of utf8mb4 to 36 bytes and compare bytewise instead of by collation,
+-- which also shrinks every secondary index since InnoDB appends the primary key to each of them.
+-- The foreign keys are kept, both sides of each are changed while foreign key checks are off.
+
+SET foreign_key_checks = 0;
+
+ALTER TABLE user_group
+    MODIFY id varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL;
+
+ALTER TABLE user
+    MODIFY id varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    MODIFY group_id varchar(36) CHARACTER SET ascii COLLATE ascii_bin;
+
+ALTER TABLE role
+    MODIFY id varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    MODIFY group_id varchar(36) CHARACTER SET ascii COLLATE ascii_bin,
+    MODIFY user_id varchar(36) CHARACTER SET ascii COLLATE ascii_bin;
+
+ALTER TABLE user_refresh_token
+    MODIFY id varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    MODIFY group_id varchar(36) CHARACTER SET ascii COLLATE ascii_bin,
+    MODIFY user_id varchar(36) CHARACTER SET ascii COLLATE ascii_bin;
+
+SET foreign_key_checks = 1;
@@ -0,0 +1,2 @@
+-- soft deleting a group revokes the refresh tokens of all its members: group_id = ?
+CREATE INDEX idx_user_refresh_token_group_id ON user_refresh_token (group_id);
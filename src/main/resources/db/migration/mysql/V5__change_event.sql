@@ -0,0 +1,18 @@
+-- Outbox of changes to users and groups, written in the transaction making the change.
+-- Rows get their sequence number from the relay once committed, consumers of the change feed resume
+-- from the last sequence number they have seen: group_id = ? AND sequence_number > ? ORDER BY sequence_number.
+-- Rows still waiting for a sequence number are found through the NULL entries of the unique index.
+
+CREATE TABLE IF NOT EXISTS change_event (
+    id                    varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    sequence_number       bigint,
+    group_id              varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    entity_type           varchar(16) NOT NULL,
+    entity_id             varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    operation             varchar(16) NOT NULL,
+    created_at            datetime(6) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_change_event_sequence_number UNIQUE (sequence_number),
+    INDEX idx_change_event_group_id_sequence_number (group_id, sequence_number),
+    INDEX idx_change_event_created_at (created_at)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,82 @@
+-- Soft deletes record when they happened. Users and groups deleted longer than pivot.archive.retention-days
+-- ago are moved to the archive tables below together with the roles of the users, refresh tokens are dropped.
+-- The hot tables keep live rows and rows deleted within the retention, which support can still restore in place.
+
+ALTER TABLE user ADD COLUMN deleted_at datetime(6);
+ALTER TABLE user_group ADD COLUMN deleted_at datetime(6);
+
+-- rows soft deleted before the column existed count as deleted at their last update
+UPDATE user SET deleted_at = COALESCE(updated_at, CURRENT_TIMESTAMP(6)) WHERE deleted = 1;
+UPDATE user_group SET deleted_at = COALESCE(updated_at, CURRENT_TIMESTAMP(6)) WHERE deleted = 1;
+
+-- archive job: deleted = 1 AND deleted_at < ? ORDER BY deleted_at, live rows have no entry in the range
+CREATE INDEX idx_user_deleted_at ON user (deleted_at);
+CREATE INDEX idx_user_group_deleted_at ON user_group (deleted_at);
+
+-- Archive tables have the columns of their hot table and the time the row was archived. They have no
+-- unique or foreign keys: an archived email may be taken again, a restore of such a user is refused.
+
+CREATE TABLE IF NOT EXISTS user_group_archive (
+    id                    varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    name                  varchar(255),
+    logo_image            varchar(255),
+    company_name          varchar(255),
+    company_website       varchar(255),
+    contact_email         varchar(255),
+    phone_number          varchar(20),
+    type                  varchar(128) NOT NULL,
+    version               bigint NOT NULL DEFAULT 0,
+    deleted_at            datetime(6),
+    archived_at           datetime(6) NOT NULL,
+    PRIMARY KEY (id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS user_archive (
+    id                    varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    group_id              varchar(36) CHARACTER SET ascii COLLATE ascii_bin,
+    locale                varchar(255),
+    email                 varchar(255),
+    first_name            varchar(255),
+    last_name             varchar(255),
+    type                  varchar(255),
+    enabled               bit,
+    locked                bit,
+    expired               bit,
+    failed_login_attempts integer,
+    last_login_attempt    datetime(6),
+    password              varchar(255),
+    version               bigint NOT NULL DEFAULT 0,
+    deleted_at            datetime(6),
+    archived_at           datetime(6) NOT NULL,
+    PRIMARY KEY (id),
+    -- restoring a group restores its archived members
+    INDEX idx_user_archive_group_id (group_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
+
+CREATE TABLE IF NOT EXISTS role_archive (
+    id                    varchar(36) CHARACTER SET ascii COLLATE ascii_bin NOT NULL,
+    created_at            datetime(6),
+    created_by            varchar(255),
+    updated_at            datetime(6),
+    updated_by            varchar(255),
+    deleted               bit,
+    group_id              varchar(36) CHARACTER SET ascii COLLATE ascii_bin,
+    role                  varchar(128) NOT NULL,
+    scope                 varchar(255),
+    action                varchar(255),
+    target                varchar(255),
+    user_id               varchar(36) CHARACTER SET ascii COLLATE ascii_bin,
+    archived_at           datetime(6) NOT NULL,
+    PRIMARY KEY (id),
+    INDEX idx_role_archive_user_id (user_id)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4;
@@ -0,0 +1,225 @@
+package com.pivotenergy.datasource
+
+import org.h2.jdbcx.JdbcDataSource
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.DataSourceTransactionManager
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.sql.DataSource
+import java.sql.SQLException
+import java.util.function.LongSupplier
+
+class ReplicaRoutingDataSourceTest extends Specification {
+    def primary = database("primary")
+    def replica = database("replica")
+    def health = new ReplicaHealth(replica, "SELECT seconds FROM replication_lag", 5)
+    long now = 1000000
+
+    def routing = new ReplicaRoutingDataSource(primary, replica, health, 5000, { now } as LongSupplier)
+    def dataSource = new LazyConnectionDataSourceProxy(routing)
+    def transactionManager = new DataSourceTransactionManager(dataSource)
+    def jdbc = new JdbcTemplate(dataSource)
+
+    def setup() {
+        health.check()
+    }
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+        [primary, replica].each { new JdbcTemplate(it).execute("DROP ALL OBJECTS") }
+    }
+
+    def "read-only transactions use the replica, others the primary"() {
+        expect:
+        read(true) == "replica"
+        read(false) == "primary"
+    }
+
+    def "a caller reads from the primary for the sticky window after a write"() {
+        given:
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken("john", null)
+
+        when:
+        write()
+
+        then:
+        read(true) == "primary"
+
+        when: "another caller reads"
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken("jane", null)
+
+        then:
+        read(true) == "replica"
+
+        when: "the window has passed"
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken("john", null)
+        now += 5000
+
+        then:
+        read(true) == "replica"
+    }
+
+    def "the caller stays sticky until the end of the window"() {
+        given:
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken("john", null)
+        write()
+
+        when:
+        now += 4999
+
+        then:
+        read(true) == "primary"
+    }
+
+    def "writes without an authenticated caller make nobody sticky"() {
+        when:
+        write()
+
+        then:
+        read(true) == "replica"
+    }
+
+    def "a rolled back write does not make the caller sticky"() {
+        given:
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken("john", null)
+
+        when:
+        new TransactionTemplate(transactionManager).execute { status ->
+            jdbc.update("INSERT INTO written (name) VALUES ('written')")
+            status.setRollbackOnly()
+        }
+
+        then:
+        read(true) == "replica"
+    }
+
+    def "reads fall back to the primary while the replica lags"() {
+        when:
+        new JdbcTemplate(replica).update("UPDATE replication_lag SET seconds = 60")
+        health.check()
+
+        then:
+        !health.usable
+        read(true) == "primary"
+
+        when:
+        new JdbcTemplate(replica).update("UPDATE replication_lag SET seconds = 1")
+        health.check()
+
+        then:
+        health.usable
+        read(true) == "replica"
+    }
+
+    @Unroll
+    def "reads fall back to the primary when the lag query returns #lag"() {
+        when:
+        new JdbcTemplate(replica).update(update)
+        health.check()
+
+        then:
+        !health.usable
+        read(true) == "primary"
+
+        where:
+        lag      | update
+        "NULL"   | "UPDATE replication_lag SET seconds = NULL"
+        "no row" | "DELETE FROM replication_lag"
+    }
+
+    def "the replica is only used after its first successful check"() {
+        given:
+        def unchecked = new ReplicaHealth(replica, "SELECT seconds FROM replication_lag", 5)
+        def template = new JdbcTemplate(new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, replica, unchecked, 5000)))
+        def transactions = new TransactionTemplate(new DataSourceTransactionManager(template.dataSource))
+        transactions.readOnly = true
+
+        expect:
+        transactions.execute { template.queryForObject("SELECT name FROM origin", String) } == "primary"
+
+        when:
+        unchecked.check()
+
+        then:
+        transactions.execute { template.queryForObject("SELECT name FROM origin", String) } == "replica"
+    }
+
+    def "reads fall back to the primary while the replica is down"() {
+        given:
+        def down = Stub(DataSource) {
+            getConnection() >> { throw new SQLException("Connection refused") }
+        }
+        def downHealth = new ReplicaHealth(down, "", 5)
+        downHealth.check()
+        def template = new JdbcTemplate(new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, down, downHealth, 5000)))
+        def transactions = new TransactionTemplate(new DataSourceTransactionManager(template.dataSource))
+        transactions.readOnly = true
+
+        expect:
+        !downHealth.usable
+        transactions.execute { template.queryForObject("SELECT name FROM origin", String) } == "primary"
+    }
+
+    def "reads return to the replica once it is reachable again"() {
+        given:
+        boolean reachable = false
+        def flaky = Stub(DataSource) {
+            getConnection() >> {
+                if (!reachable) {
+                    throw new SQLException("Connection refused")
+                }
+                replica.getConnection()
+            }
+        }
+        def flakyHealth = new ReplicaHealth(flaky, "SELECT seconds FROM replication_lag", 5)
+        def template = new JdbcTemplate(new LazyConnectionDataSourceProxy(
+                new ReplicaRoutingDataSource(primary, flaky, flakyHealth, 5000)))
+        def transactions = new TransactionTemplate(new DataSourceTransactionManager(template.dataSource))
+        transactions.readOnly = true
+
+        when:
+        flakyHealth.check()
+
+        then:
+        transactions.execute { template.queryForObject("SELECT name FROM origin", String) } == "primary"
+
+        when:
+        reachable = true
+        flakyHealth.check()
+
+        then:
+        flakyHealth.usable
+        transactions.execute { template.queryForObject("SELECT name FROM origin", String) } == "replica"
+    }
+
+    private String read(boolean readOnly) {
+        def template = new TransactionTemplate(transactionManager)
+        template.readOnly = readOnly
+        return template.execute { jdbc.queryForObject("SELECT name FROM origin", String) }
+    }
+
+    private void write() {
+        new TransactionTemplate(transactionManager).execute {
+            jdbc.update("INSERT INTO written (name) VALUES ('written')")
+        }
+    }
+
+    private static DataSource database(String name) {
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:${name};DB_CLOSE_DELAY=-1")
+        def jdbc = new JdbcTemplate(dataSource)
+        jdbc.execute("CREATE TABLE origin (name varchar(32))")
+        jdbc.execute("CREATE TABLE written (name varchar(32))")
+        jdbc.execute("CREATE TABLE replication_lag (seconds bigint)")
+        jdbc.update("INSERT INTO origin (name) VALUES (?)", name)
+        jdbc.update("INSERT INTO replication_lag (seconds) VALUES (0)")
+        return dataSource
+    }
+}
@@ -0,0 +1,28 @@
+package com.pivotenergy.domain
+
+import spock.lang.Specification
+
+class TimeOrderedIdGeneratorTest extends Specification {
+    def generator = new TimeOrderedIdGenerator()
+
+    def "ids are version 7 UUIDs in canonical text form"() {
+        when:
+        def id = generator.generate(null, null) as String
+        def uuid = UUID.fromString(id)
+
+        then:
+        id.length() == 36
+        uuid.version() == 7
+        uuid.variant() == 2
+        Math.abs((uuid.mostSignificantBits >>> 16) - System.currentTimeMillis()) < 60000
+    }
+
+    def "ids sort in generation order, also within the same millisecond"() {
+        when:
+        def ids = (1..10000).collect { generator.generate(null, null) as String }
+
+        then:
+        ids == ids.toSorted()
+        ids.toSet().size() == ids.size()
+    }
+}
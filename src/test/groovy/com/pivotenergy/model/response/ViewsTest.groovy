@@ -0,0 +1,61 @@
+package com.pivotenergy.model.response
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.pivotenergy.domain.Group
+import com.pivotenergy.domain.Role
+import com.pivotenergy.domain.User
+import spock.lang.Specification
+
+class ViewsTest extends Specification {
+    def group = new Group().setName("Views").setContactEmail("views@views.io").setType(Group.Type.CLIENT)
+    def user = new User()
+            .setGroup(group)
+            .setEmail("user@views.io")
+            .setFirstName("View")
+            .setLastName("User")
+            .setType(User.Type.USER)
+            .setEncodedPassword("hash")
+            .addRole(new Role().setRole(Role.Scope.ROLE_USER, Role.Action.READ, Role.Target.GLOBAL))
+
+    def "a user view is a snapshot which later changes of the entity do not reach"() {
+        given:
+        def view = UserView.of(user)
+
+        when:
+        user.setFirstName("Changed")
+        user.addRole(new Role().setRole(Role.Scope.ROLE_USER, Role.Action.UPDATE, Role.Target.BUILDINGS))
+
+        then:
+        view.firstName == "View"
+        view.roles*.role == ["ROLE_USER_READ_GLOBAL"]
+    }
+
+    def "the roles of a user view cannot be modified"() {
+        when:
+        UserView.of(user).roles.clear()
+
+        then:
+        thrown(UnsupportedOperationException)
+    }
+
+    def "a user view serializes like the entity without the password"() {
+        when:
+        def json = new ObjectMapper().convertValue(UserView.of(user), Map)
+
+        then:
+        !json.containsKey("password")
+        !json.containsKey("group")
+        json.email == "user@views.io"
+        json.roles*.scope == ["ROLE_USER"]
+    }
+
+    def "a group view never carries its members"() {
+        when:
+        def json = new ObjectMapper().convertValue(GroupView.of(group), Map)
+
+        then:
+        !json.containsKey("users")
+        json.name == "Views"
+        json.type == "CLIENT"
+    }
+}
@@ -0,0 +1,91 @@
+package com.pivotenergy.repositories
+
+import org.flywaydb.core.Flyway
+import org.h2.jdbcx.JdbcDataSource
+import org.springframework.core.io.ClassPathResource
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.sql.DataSource
+
+/**
+ * Applies the migrations the way the application does, spring.flyway.baseline-on-migrate with
+ * baseline version 0, to a database carrying the schema hibernate created before the migrations existed.
+ */
+class SchemaMigrationTest extends Specification {
+    def existing = database("existing")
+    def fresh = database("fresh")
+
+    def cleanup() {
+        [existing, fresh].each { new JdbcTemplate(it).execute("DROP ALL OBJECTS") }
+    }
+
+    @Unroll
+    def "a database created by hibernate #history ends up with the columns of a new database"() {
+        given:
+        new ResourceDatabasePopulator(new ClassPathResource("db/hibernate-baseline-h2.sql")).execute(existing)
+        def jdbc = new JdbcTemplate(existing)
+        prepare.each { jdbc.execute(it) }
+        jdbc.update("INSERT INTO user_group (id, name, type) VALUES ('g', 'Existing', 'CLIENT')")
+        jdbc.update("INSERT INTO user (id, group_id, email, type, enabled, locked, expired, failed_login_attempts) " +
+                "VALUES ('u', 'g', 'existing@migration.io', 'USER', TRUE, FALSE, FALSE, 0)")
+
+        when:
+        migrate(existing)
+        migrate(fresh)
+
+        then:
+        columns(existing) == columns(fresh)
+        ["USER", "USER_GROUP"].every { table ->
+            jdbc.queryForObject("SELECT is_nullable FROM information_schema.columns " +
+                    "WHERE table_schema = 'PUBLIC' AND table_name = ? AND column_name = 'VERSION'", String, table) == "NO"
+        }
+
+        and: "existing rows can be read and updated with optimistic locking"
+        ["user", "user_group"].every { table ->
+            jdbc.update("UPDATE ${table} SET version = version + 1 WHERE version = 0".toString()) == 1
+        }
+
+        and: "rows inserted without a version start at 0"
+        jdbc.update("INSERT INTO user_group (id, name, type) VALUES ('n', 'New', 'CLIENT')") == 1
+        jdbc.queryForObject("SELECT version FROM user_group WHERE id = 'n'", Long) == 0
+
+        where:
+        history                          | prepare
+        "before versions were mapped"    | []
+        "with versions added by updates" | ["ALTER TABLE user ADD COLUMN version bigint",
+                                            "ALTER TABLE user_group ADD COLUMN version bigint"]
+    }
+
+    private static void migrate(DataSource dataSource) {
+        Flyway.configure()
+                .dataSource(dataSource)
+                .locations("classpath:db/migration/h2")
+                .baselineOnMigrate(true)
+                .baselineVersion("0")
+                .load()
+                .migrate()
+    }
+
+    /**
+     * @return column names by table, types and constraints of the baseline columns differ between
+     * hibernate and the migrations and are not compared
+     */
+    private static Map<String, Set<String>> columns(DataSource dataSource) {
+        Map<String, Set<String>> columns = new TreeMap<>()
+        new JdbcTemplate(dataSource).queryForList("SELECT table_name, column_name FROM information_schema.columns " +
+                "WHERE table_schema = 'PUBLIC' AND UPPER(table_name) <> 'FLYWAY_SCHEMA_HISTORY'")
+                .each { row ->
+                    columns.computeIfAbsent(row.TABLE_NAME as String, { new TreeSet<>() }).add(row.COLUMN_NAME as String)
+                }
+        return columns
+    }
+
+    private static DataSource database(String name) {
+        def dataSource = new JdbcDataSource()
+        dataSource.setURL("jdbc:h2:mem:migration-${name};DB_CLOSE_DELAY=-1")
+        return dataSource
+    }
+}
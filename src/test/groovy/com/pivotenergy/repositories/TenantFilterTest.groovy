@@ -0,0 +1,202 @@
+package com.pivotenergy.repositories
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.domain.Group
+import com.pivotenergy.domain.Role
+import com.pivotenergy.domain.User
+import com.pivotenergy.security.model.UserSession
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.jpa.repository.Modifying
+import org.springframework.data.jpa.repository.Query
+import org.springframework.security.authentication.TestingAuthenticationToken
+import org.springframework.security.core.context.SecurityContextHolder
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+class TenantFilterTest extends Specification {
+    @Autowired
+    GroupRepository groupRepository
+    @Autowired
+    UserRepository userRepository
+    @Autowired
+    RoleRepository roleRepository
+    @Autowired
+    PlatformTransactionManager transactionManager
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    Map<String, String> tenants = [:]
+    @Shared
+    Map<String, String> users = [:]
+
+    def setup() {
+        if (tenants.isEmpty()) {
+            new TransactionTemplate(transactionManager).execute {
+                ["north", "south"].each { name -> seed(name) }
+            }
+        }
+    }
+
+    def cleanup() {
+        SecurityContextHolder.clearContext()
+    }
+
+    @Unroll
+    def "#repository.simpleName queries do not evaluate the tenant per execution"() {
+        expect:
+        queries(repository).every { !it.value().contains("?#{") }
+
+        where:
+        repository << [UserRepository, RoleRepository]
+    }
+
+    @Unroll
+    def "bulk statements of #repository.simpleName are restricted to a tenant parameter"() {
+        given: "the filter does not apply to bulk statements"
+        def modifying = repository.methods.findAll { it.isAnnotationPresent(Modifying) }
+
+        expect:
+        !modifying.isEmpty()
+        modifying.every { method ->
+            // the tenant is the last parameter
+            method.getAnnotation(Query).value().contains("o.groupId = ?${method.parameterCount}")
+        }
+
+        where:
+        repository << [UserRepository, RoleRepository]
+    }
+
+    def "queries only see the rows of the current tenant"() {
+        given:
+        authenticate("north")
+
+        expect:
+        userRepository.findAll()*.id == [users.north]
+        userRepository.count() == 1
+        userRepository.findAll(PageRequest.of(0, 10)).totalElements == 1
+        userRepository.findById(users.south) == Optional.empty()
+        !userRepository.existsById(users.south)
+        userRepository.findIdsByIdIn(users.values()) == [users.north]
+        roleRepository.count() == 1
+    }
+
+    def "queries without a user see no rows"() {
+        expect:
+        userRepository.findAll().isEmpty()
+        userRepository.count() == 0
+        userRepository.findByEmail("user@north.tenant-filter.io") == Optional.empty()
+        !userRepository.existsById(users.north)
+        roleRepository.count() == 0
+
+        and: "reads across tenants state it"
+        TenantFilter.unfiltered(entityManager, {
+            userRepository.findByEmail("user@north.tenant-filter.io")
+        }).get().id == users.north
+    }
+
+    def "the filter is bound per transaction, not per entity manager"() {
+        when:
+        authenticate("north")
+        def north = userRepository.findAll()*.id
+        authenticate("south")
+        def south = userRepository.findAll()*.id
+
+        then:
+        north == [users.north]
+        south == [users.south]
+    }
+
+    def "cross-tenant queries run unfiltered inside and outside a transaction"() {
+        given:
+        authenticate("north")
+        def template = new TransactionTemplate(transactionManager)
+        template.readOnly = true
+
+        expect: "the lookup begins its own transaction"
+        TenantFilter.unfiltered(entityManager, {
+            userRepository.findByGroupId(tenants.south, PageRequest.of(0, 10))*.id
+        }) == [users.south]
+
+        and: "the lookup joins a running transaction, which is filtered again afterwards"
+        template.execute {
+            def south = TenantFilter.unfiltered(entityManager, {
+                userRepository.findByGroupId(tenants.south, PageRequest.of(0, 10))*.id
+            })
+            [south, userRepository.findAll()*.id]
+        } == [[users.south], [users.north]]
+    }
+
+    def "bulk statements only touch the current tenant"() {
+        given:
+        authenticate("north")
+
+        when:
+        def deleted = userRepository.softDeleteById(users.south)
+
+        then:
+        deleted == 0
+        TenantFilter.unfiltered(entityManager, {
+            userRepository.findByGroupId(tenants.south, PageRequest.of(0, 10))*.id
+        }) == [users.south]
+    }
+
+    def "bulk statements refuse to run without a tenant"() {
+        when:
+        userRepository.softDeleteById(users.south)
+
+        then:
+        thrown(IllegalStateException)
+    }
+
+    private void authenticate(String tenant) {
+        def session = new UserSession()
+        session.id = users[tenant]
+        session.groupId = tenants[tenant]
+        SecurityContextHolder.context.authentication = new TestingAuthenticationToken(session, null)
+    }
+
+    private void seed(String name) {
+        def group = groupRepository.save(new Group()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setName("${name}@tenant-filter.io")
+                .setContactEmail("${name}@tenant-filter.io")
+                .setType(Group.Type.CLIENT))
+        def user = userRepository.save(new User()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setGroup(group)
+                .setType(User.Type.USER)
+                .setLocale("EN")
+                .setEmail("user@${name}.tenant-filter.io")
+                .setFirstName(name)
+                .setLastName(name)
+                .setEncodedPassword("hash")
+                .addRole(new Role()
+                        .setCreatedAt(new Date())
+                        .setCreatedBy("1")
+                        .setUpdatedAt(new Date())
+                        .setUpdatedBy("1")
+                        .setRole(Role.Scope.ROLE_USER, Role.Action.READ, Role.Target.GLOBAL)))
+        tenants[name] = group.id
+        users[name] = user.id
+    }
+
+    private static List<Query> queries(Class<?> repository) {
+        return repository.methods.findResults { it.getAnnotation(Query) }
+    }
+}
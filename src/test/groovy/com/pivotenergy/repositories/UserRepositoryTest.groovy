@@ -0,0 +1,83 @@
+package com.pivotenergy.repositories
+
+import com.pivotenergy.domain.Group
+import com.pivotenergy.domain.Role
+import com.pivotenergy.domain.User
+import org.hibernate.SessionFactory
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
+import spock.lang.Specification
+
+@DataJpaTest(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+class UserRepositoryTest extends Specification {
+    @Autowired
+    GroupRepository groupRepository
+    @Autowired
+    UserRepository userRepository
+    @Autowired
+    TestEntityManager entityManager
+
+    def ids = []
+
+    def setup() {
+        def hash = new BCryptPasswordEncoder().encode("password")
+        def group = groupRepository.save(new Group()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setName("statements@test.io")
+                .setContactEmail("statements@test.io")
+                .setType(Group.Type.CLIENT))
+
+        100.times { index ->
+            def user = userRepository.save(new User()
+                    .setCreatedAt(new Date())
+                    .setCreatedBy("1")
+                    .setUpdatedAt(new Date())
+                    .setUpdatedBy("1")
+                    .setGroup(group)
+                    .setType(User.Type.USER)
+                    .setLocale("EN")
+                    .setEmail("user${index}@statements.test.io")
+                    .setFirstName("First${index}")
+                    .setLastName("Last${index}")
+                    .setEncodedPassword(hash)
+                    .addRole(new Role()
+                            .setCreatedAt(new Date())
+                            .setCreatedBy("1")
+                            .setUpdatedAt(new Date())
+                            .setUpdatedBy("1")
+                            .setRole(Role.Scope.ROLE_USER, Role.Action.READ, Role.Target.GLOBAL))
+                    .addRole(new Role()
+                            .setCreatedAt(new Date())
+                            .setCreatedBy("1")
+                            .setUpdatedAt(new Date())
+                            .setUpdatedBy("1")
+                            .setRole(Role.Scope.ROLE_USER, Role.Action.UPDATE, Role.Target.BUILDINGS)))
+            ids << user.id
+        }
+
+        entityManager.flush()
+        entityManager.clear()
+    }
+
+    def "loading the roles of a page of 100 users should cost a constant number of statements"() {
+        given: "empty hibernate statistics"
+        def statistics = entityManager.entityManager.entityManagerFactory.unwrap(SessionFactory).statistics
+        statistics.clear()
+
+        when: "a page of users is loaded and the roles of every user are read"
+        def users = userRepository.findAllById(ids)
+        def roles = users.collect { it.roles.collect { it.role } }.flatten()
+
+        then: "all users and their roles are present"
+        users.size() == 100
+        roles.size() == 200
+
+        and: "users, their group and all roles are loaded with one statement each"
+        statistics.prepareStatementCount <= 3
+    }
+}
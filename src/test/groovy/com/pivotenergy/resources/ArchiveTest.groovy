@@ -0,0 +1,193 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import com.pivotenergy.services.ArchiveService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+import java.sql.Timestamp
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class ArchiveTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    // rows are deleted long ago on purpose, archiving never touches the deleted rows of other tests
+    private static final Timestamp DELETED = Timestamp.valueOf("2000-01-01 00:00:00")
+    private static final Date RETENTION = Timestamp.valueOf("2000-01-02 00:00:00")
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+    @Autowired
+    ArchiveService archiveService
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "users deleted before the retention are moved to the archive with their roles and restored from it"() {
+        given:
+        def id = addUser(tenantId, "archived@archive.io")
+        perform(post("/users/${id}/roles")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([scope: "ROLE_USER", action: "READ", target: "MEASURES"])))
+        perform(delete("/users/" + id))
+        backdate("user", id, DELETED)
+
+        when:
+        archiveService.archive(RETENTION)
+
+        then:
+        count("user", "id", id) == 0
+        count("role", "user_id", id) == 0
+        count("user_archive", "id", id) == 1
+        count("role_archive", "user_id", id) == 1
+
+        when:
+        def restored = json(perform(post("/users/${id}/restore")))
+
+        then:
+        restored.id == id
+        restored.email == "archived@archive.io"
+        count("user_archive", "id", id) == 0
+        count("role_archive", "user_id", id) == 0
+        count("role", "user_id", id) == 1
+        json(perform(get("/users/" + id))).id == id
+    }
+
+    def "users deleted within the retention stay in the user table and are restored in place"() {
+        given:
+        def id = addUser(tenantId, "recent@archive.io")
+        perform(delete("/users/" + id))
+
+        when:
+        archiveService.archive(RETENTION)
+        perform(post("/users/${id}/restore"))
+
+        then:
+        count("user_archive", "id", id) == 0
+        json(perform(get("/users/" + id))).id == id
+    }
+
+    def "a user is not restored when its email was taken after it was archived"() {
+        given:
+        def id = addUser(tenantId, "taken@archive.io")
+        perform(delete("/users/" + id))
+        backdate("user", id, DELETED)
+        archiveService.archive(RETENTION)
+        addUser(tenantId, "taken@archive.io")
+
+        when:
+        def result = mvc.perform(post("/users/${id}/restore")
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)).andReturn()
+
+        then:
+        result.response.status == 400
+        count("user_archive", "id", id) == 1
+    }
+
+    def "a restored group brings back the members deleted with it but not those deleted before"() {
+        given:
+        def groupId = json(perform(post("/groups")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([name: "Archived", contactEmail: "group@archive.io", type: "CLIENT"])))).id
+        def member = addUser(groupId, "member@archive.io")
+        def former = addUser(groupId, "former@archive.io")
+        jdbcTemplate.update("UPDATE user SET deleted = true, deleted_at = ? WHERE id = ?",
+                Timestamp.valueOf("1999-01-01 00:00:00"), former)
+        perform(delete("/groups/" + groupId))
+        backdate("user", member, DELETED)
+        backdate("user_group", groupId, DELETED)
+
+        when:
+        archiveService.archive(RETENTION)
+
+        then:
+        count("user_group", "id", groupId) == 0
+        count("user_group_archive", "id", groupId) == 1
+        count("user_archive", "group_id", groupId) == 2
+
+        when:
+        def restored = json(perform(post("/groups/${groupId}/restore")))
+
+        then:
+        restored.id == groupId
+        count("user_group_archive", "id", groupId) == 0
+        json(perform(get("/groups/${groupId}/users"))).content*.id == [member]
+        count("user_archive", "id", former) == 1
+    }
+
+    def "restoring a user or group which is not deleted is not found"() {
+        expect:
+        mvc.perform(post("/users/missing/restore").header(JWTSecurityService.AUTHORIZATION_HEADER, bearer))
+                .andReturn().response.status == 404
+        mvc.perform(post("/groups/${tenantId}/restore").header(JWTSecurityService.AUTHORIZATION_HEADER, bearer))
+                .andReturn().response.status == 404
+    }
+
+    private String addUser(String groupId, String email) {
+        return json(perform(post("/groups/${groupId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email   : email, firstName: "Archive", lastName: "Test", locale: "EN",
+                                            type    : "USER", password: "password", enabled: true])))).id
+    }
+
+    private void backdate(String table, String id, Timestamp deletedAt) {
+        jdbcTemplate.update("UPDATE ${table} SET deleted_at = ? WHERE id = ?".toString(), deletedAt, id)
+    }
+
+    private int count(String table, String column, String value) {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM ${table} WHERE ${column} = ?".toString(),
+                Integer, value)
+    }
+
+    private static Object json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString)
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
@@ -0,0 +1,92 @@
+package com.pivotenergy.resources
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory
+import com.fasterxml.jackson.dataformat.smile.SmileFactory
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class BinaryFormatsTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String adminId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            adminId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().id
+        }
+    }
+
+    @Unroll
+    def "#path is served as #mediaType with the same content as JSON"() {
+        given:
+        def json = new ObjectMapper().readTree(perform(get(path.replace("{id}", adminId))
+                .accept(MediaType.APPLICATION_JSON)).response.contentAsByteArray)
+
+        when:
+        def response = perform(get(path.replace("{id}", adminId)).accept(mediaType)).response
+
+        then:
+        response.contentType.startsWith(mediaType)
+        mapper.readTree(response.contentAsByteArray) == json
+
+        where:
+        path          | mediaType                 | mapper
+        "/users/{id}" | BinaryFormats.SMILE_VALUE | new ObjectMapper(new SmileFactory())
+        "/users/{id}" | BinaryFormats.CBOR_VALUE  | new ObjectMapper(new CBORFactory())
+        "/users"      | BinaryFormats.SMILE_VALUE | new ObjectMapper(new SmileFactory())
+        "/users"      | BinaryFormats.CBOR_VALUE  | new ObjectMapper(new CBORFactory())
+    }
+
+    def "clients accepting anything still get JSON"() {
+        when:
+        def response = perform(get("/users/" + adminId).accept(MediaType.ALL)).response
+
+        then:
+        response.contentType.startsWith(MediaType.APPLICATION_JSON_VALUE)
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
@@ -0,0 +1,158 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.hibernate.engine.spi.SessionFactoryImplementor
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = [
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.pivotenergy.resources.StatementRecorder",
+        // the relay only runs once at startup, its statements would be counted against the request
+        "pivot.changes.relay-interval=3600000",
+        "pivot.import.chunk-size=2",
+        "pivot.import.bulk-max=6",
+        "eureka.client.enabled=false"
+])
+@AutoConfigureMockMvc
+class BulkAddTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "inserts are ordered by table and sent in batches"() {
+        when:
+        def options = entityManager.entityManagerFactory.unwrap(SessionFactoryImplementor).sessionFactoryOptions
+
+        then:
+        options.jdbcBatchSize == 100
+        options.orderInsertsEnabled
+        options.orderUpdatesEnabled
+        options.jdbcBatchVersionedData
+    }
+
+    def "all users are created in request order with one user insert per chunk"() {
+        given: "five users in chunks of two"
+        def rows = (1..5).collect { row("batched${it}") }
+
+        when:
+        MvcResult result = null
+        def statements = StatementRecorder.record { result = send(bulk(rows)) }
+        def ids = new JsonSlurper().parseText(result.response.contentAsString) as List<String>
+
+        then:
+        result.response.status == 201
+        ids.size() == 5
+        ids.collect { json(perform(get("/users/" + it))).email } == rows*.email
+
+        and: "the rows of a chunk share one prepared insert instead of one statement per user"
+        statements.count { normalize(it).startsWith("insert into user ") } == 3
+    }
+
+    def "one invalid row rejects the request and creates nobody"() {
+        given:
+        def rows = [row("valid"), row("other"), row("badrole", [roles: ["ROLE_NOPE"]]), row("blank", [lastName: ""])]
+
+        when:
+        def result = send(bulk(rows))
+
+        then:
+        result.response.status == 400
+        rows.every { !exists(it.email) }
+    }
+
+    def "an email repeated within the request rejects it"() {
+        when:
+        def result = send(bulk([row("twice"), row("twice")]))
+
+        then:
+        result.response.status == 400
+        !exists(row("twice").email)
+    }
+
+    def "more users than the bulk limit are rejected before any is validated"() {
+        given:
+        def rows = (1..7).collect { row("limit${it}") }
+
+        when:
+        def result = send(bulk(rows))
+
+        then:
+        result.response.status == 400
+        rows.every { !exists(it.email) }
+    }
+
+    private MockHttpServletRequestBuilder bulk(List<Map> rows) {
+        return post("/groups/${tenantId}/users/bulk")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson(rows))
+    }
+
+    private boolean exists(String email) {
+        return TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(email) }).isPresent()
+    }
+
+    private static Map row(String name, Map overrides = [:]) {
+        return [email: "${name}@bulk.test.io".toString(), firstName: "Bulk", lastName: name, password: "password",
+                roles: ["ROLE_USER_READ_GLOBAL"]] + overrides
+    }
+
+    private static String normalize(String sql) {
+        return sql.toLowerCase(Locale.ROOT).replaceAll(/\s+/, " ").trim()
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        MvcResult result = send(builder)
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private MvcResult send(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        return mvc.perform(builder).andReturn()
+    }
+}
@@ -0,0 +1,151 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.ChangeEventRepository
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import com.pivotenergy.services.ChangeFeed
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = [
+        // relay runs are triggered by the test
+        "pivot.changes.relay-interval=3600000",
+        "eureka.client.enabled=false"
+])
+@AutoConfigureMockMvc
+class ChangeFeedTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+    @Autowired
+    ChangeEventRepository changeEventRepository
+    @Autowired
+    ChangeFeed changeFeed
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "committed changes are streamed to subscribers of the tenant in order"() {
+        given: "changes of other tests are numbered before the subscription starts"
+        changeFeed.relay()
+        MvcResult stream = perform(get("/changes"))
+
+        when:
+        def created = addUser("streamed@change-feed.io")
+        perform(patch("/users/" + created)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([firstName: "Renamed"])))
+        changeFeed.relay()
+
+        then:
+        stream.request.asyncStarted
+        def events = events(stream).findAll { it.data.id == created }
+        events*.data*.id == [created, created]
+        events*.data*.operation == ["CREATED", "UPDATED"]
+        events*.name == ["USER", "USER"]
+        events*.id == events*.data*.sequenceNumber*.toString()
+        events[0].id as long < events[1].id as long
+    }
+
+    def "a reconnecting client resumes after its last event id"() {
+        given:
+        changeFeed.relay()
+        def created = addUser("resumed@change-feed.io")
+        changeFeed.relay()
+        long last = changeEventRepository.findLastSequenceNumber().get()
+
+        when:
+        MvcResult resumed = perform(get("/changes").header("Last-Event-ID", last - 1))
+        MvcResult current = perform(get("/changes").header("Last-Event-ID", last))
+        changeFeed.relay()
+
+        then:
+        events(resumed)*.data*.id == [created]
+        events(current).isEmpty()
+    }
+
+    def "changes which are not committed are not recorded"() {
+        given:
+        long before = changeEventRepository.count()
+
+        when: "the email is taken, the insert fails and the transaction rolls back"
+        def result = mvc.perform(post("/groups/${tenantId}/users")
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(user(ADMIN_EMAIL))).andReturn()
+
+        then:
+        result.response.status >= 400
+        changeEventRepository.count() == before
+    }
+
+    private String addUser(String email) {
+        def response = perform(post("/groups/${tenantId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(user(email))).response
+        return new JsonSlurper().parseText(response.contentAsString).id
+    }
+
+    private static String user(String email) {
+        return JsonOutput.toJson([email   : email, firstName: "Change", lastName: "Feed", locale: "EN",
+                                  type    : "USER", password: "password", enabled: true])
+    }
+
+    /**
+     * @return id, name and parsed data of each event written to the stream so far
+     */
+    private static List<Map<String, Object>> events(MvcResult stream) {
+        return stream.response.contentAsString.split("\n\n").findAll { !it.trim().isEmpty() }.collect { event ->
+            Map<String, String> fields = event.readLines().collectEntries { line ->
+                int colon = line.indexOf(":")
+                [(line.substring(0, colon)): line.substring(colon + 1)]
+            }
+            [id: fields.id, name: fields.event, data: new JsonSlurper().parseText(fields.data)]
+        }
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
@@ -0,0 +1,190 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class ConditionalRequestTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "the tags returned by PUT and PATCH are accepted by the next conditional change"() {
+        given:
+        def id = addUser("chained@conditional.io")
+        def current = perform(get("/users/" + id))
+
+        when:
+        def replaced = perform(put("/users/" + id)
+                .header(HttpHeaders.IF_MATCH, etag(current))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson(json(current) + [lastName: "Replaced"])))
+        def patched = send(patch("/users/" + id)
+                .header(HttpHeaders.IF_MATCH, etag(replaced))
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([firstName: "Patched"])))
+
+        then:
+        replaced.response.status == 202
+        patched.response.status == 202
+        etag(replaced) == ETags.of(json(replaced).version as Long)
+        etag(patched) == etag(perform(get("/users/" + id)))
+    }
+
+    def "the current tag is not modified and a stale tag is answered with the representation"() {
+        given:
+        def id = addUser("unchanged@conditional.io")
+        def tag = etag(perform(get("/users/" + id)))
+
+        when:
+        def unchanged = send(get("/users/" + id).header(HttpHeaders.IF_NONE_MATCH, tag))
+        rename(id, tag)
+        def changed = send(get("/users/" + id).header(HttpHeaders.IF_NONE_MATCH, tag))
+
+        then:
+        unchanged.response.status == 304
+        etag(unchanged) == tag
+        changed.response.status == 200
+        etag(changed) != tag
+        json(changed).firstName == "Renamed"
+    }
+
+    def "a change conditional on a stale tag is rejected"() {
+        given:
+        def id = addUser("stale@conditional.io")
+        def tag = etag(perform(get("/users/" + id)))
+        rename(id, tag)
+
+        when:
+        def rejected = send(patch("/users/" + id)
+                .header(HttpHeaders.IF_MATCH, tag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([lastName: "Lost"])))
+
+        then:
+        rejected.response.status == 412
+        json(perform(get("/users/" + id))).lastName == "Request"
+    }
+
+    @Unroll
+    def "#change a role makes the tag of the user stale"() {
+        given:
+        def id = addUser("${change}@roles.conditional.io")
+        def role = json(perform(post("/users/${id}/roles").contentType(MediaType.APPLICATION_JSON).content(ROLE))).id
+        def tag = etag(perform(get("/users/" + id)))
+
+        when:
+        perform(request(change, id, role))
+        def read = send(get("/users/" + id).header(HttpHeaders.IF_NONE_MATCH, tag))
+        def replaced = send(put("/users/" + id)
+                .header(HttpHeaders.IF_MATCH, tag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson(json(read) + [lastName: "Lost"])))
+
+        then:
+        read.response.status == 200
+        etag(read) != tag
+        replaced.response.status == 412
+
+        where:
+        change << ["adding", "deleting", "granting", "revoking"]
+    }
+
+    private static final String ROLE = JsonOutput.toJson([scope: "ROLE_USER", action: "READ", target: "MEASURES"])
+
+    private static MockHttpServletRequestBuilder request(String change, String id, String role) {
+        switch (change) {
+            case "adding":
+                return post("/users/${id}/roles").contentType(MediaType.APPLICATION_JSON)
+                        .content(JsonOutput.toJson([scope: "ROLE_USER", action: "READ", target: "GLOBAL"]))
+            case "deleting":
+                return delete("/users/${id}/roles/${role}")
+            case "granting":
+                return post("/users/roles/grant").contentType(MediaType.APPLICATION_JSON).content(JsonOutput.toJson(
+                        [userIds: [id], roles: [[scope: "ROLE_USER", action: "UPDATE", target: "BUILDINGS"]]]))
+            default:
+                return post("/users/roles/revoke").contentType(MediaType.APPLICATION_JSON).content(JsonOutput.toJson(
+                        [userIds: [id], roles: [[scope: "ROLE_USER", action: "READ", target: "MEASURES"]]]))
+        }
+    }
+
+    private void rename(String id, String tag) {
+        perform(patch("/users/" + id)
+                .header(HttpHeaders.IF_MATCH, tag)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([firstName: "Renamed"])))
+    }
+
+    private String addUser(String email) {
+        return json(perform(post("/groups/${tenantId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email   : email, firstName: "Conditional", lastName: "Request",
+                                            locale  : "EN", type: "USER", password: "password", enabled: true])))).id
+    }
+
+    private static String etag(MvcResult result) {
+        return result.response.getHeader(HttpHeaders.ETAG)
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        MvcResult result = send(builder)
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private MvcResult send(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        return mvc.perform(builder).andReturn()
+    }
+}
@@ -0,0 +1,149 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = ["eureka.client.enabled=false", "pivot.export.fetch-size=2",
+        "pivot.bulk.stream-timeout=120000"])
+@AutoConfigureMockMvc
+class ExportTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+    @Shared
+    List<String> exported = []
+    @Shared
+    String deleted
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+
+            5.times { exported << addUser("exported${it}@export.test.io") }
+            deleted = addUser("deleted@export.test.io")
+            perform(delete("/users/" + deleted))
+        }
+    }
+
+    def "users are streamed as NDJSON with the requested fields in request order"() {
+        when:
+        def started = send(get("/users/export").param("format", "NDJSON").param("fields", "email,id"))
+        def rows = stream(started).readLines().collect { new JsonSlurper().parseText(it) as Map }
+
+        then: "the stream runs with the configured timeout instead of the container default"
+        started.request.asyncContext.timeout == 120000
+
+        and:
+        rows.every { it.keySet() as List == ["email", "id"] }
+        rows*.id.containsAll(exported)
+        !rows*.id.contains(deleted)
+        rows.find { it.id == exported[0] }.email == "exported0@export.test.io"
+    }
+
+    def "users are streamed as CSV with a header row"() {
+        when:
+        def lines = stream(send(get("/users/export").param("format", "CSV").param("fields", "id,lastName"))).readLines()
+
+        then:
+        lines[0] == "id,lastName"
+        exported.every { id -> lines.contains(id + ",Export") }
+    }
+
+    def "all selectable fields are exported when none are requested"() {
+        when:
+        def row = stream(send(get("/users/export"))).readLines()
+                .collect { new JsonSlurper().parseText(it) as Map }
+                .find { it.id == exported[1] }
+
+        then:
+        row.email == "exported1@export.test.io"
+        row.firstName == "Exported"
+        !row.containsKey("password")
+    }
+
+    def "groups are streamed with the requested fields"() {
+        when:
+        def rows = stream(send(get("/groups/export").param("fields", "id,name"))).readLines()
+                .collect { new JsonSlurper().parseText(it) as Map }
+
+        then:
+        rows.every { it.keySet() as List == ["id", "name"] }
+        rows*.id.contains(tenantId)
+    }
+
+    def "fields which cannot be exported are rejected before streaming starts"() {
+        when:
+        def result = send(get("/users/export").param("fields", "id,password"))
+
+        then:
+        !result.request.asyncStarted
+        result.response.status == 400
+    }
+
+    private String addUser(String email) {
+        return json(perform(post("/groups/${tenantId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email : email, firstName: "Exported", lastName: "Export",
+                                            locale: "EN", type: "USER", password: "password", enabled: true])))).id
+    }
+
+    private String stream(MvcResult started) {
+        assert started.request.asyncStarted
+        MvcResult result = mvc.perform(asyncDispatch(started)).andReturn()
+        assert result.response.status == 200: result.response.contentAsString
+        return result.response.contentAsString
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        MvcResult result = send(builder)
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private MvcResult send(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        return mvc.perform(builder).andReturn()
+    }
+}
@@ -0,0 +1,121 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import com.pivotenergy.services.BulkFormat
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = ["eureka.client.enabled=false", "pivot.import.chunk-size=2",
+        "pivot.bulk.stream-timeout=120000"])
+@AutoConfigureMockMvc
+class ImportTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "rows are committed chunk by chunk and every row gets a result line"() {
+        given: "chunks of two rows, the sixth row is malformed"
+        def rows = [row("first"), row("second"),
+                    row("badrole", [roles: ["ROLE_NOPE"]]),
+                    row("first"),
+                    row("third")].collect { JsonOutput.toJson(it) } + ['{"email":']
+
+        when:
+        def started = mvc.perform(post("/groups/${tenantId}/users/import")
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+                .contentType(BulkFormat.NDJSON_VALUE)
+                .content(rows.join("\n"))).andReturn()
+        def results = lines(mvc.perform(asyncDispatch(started)).andReturn())
+
+        then: "the stream runs with the configured timeout instead of the container default"
+        started.request.asyncStarted
+        started.request.asyncContext.timeout == 120000
+
+        and: "the response reports every row in order"
+        results*.row == [1, 2, 3, 4, 5, 6]
+        results*.status == ["CREATED", "CREATED", "FAILED", "FAILED", "CREATED", "FAILED"]
+        results[2].errors == ["Unknown role 'ROLE_NOPE'"]
+        results[3].errors == ["email already exists"]
+        results[5].errors.size() == 1
+
+        and: "the chunks before the malformed row stay imported"
+        results.findAll { it.status == "CREATED" }.every { created ->
+            json(perform(get("/users/" + created.id))).email == created.email
+        }
+    }
+
+    def "an unknown format is rejected before streaming starts"() {
+        when:
+        def result = mvc.perform(post("/groups/${tenantId}/users/import")
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+                .contentType("application/xml")
+                .content("<users/>")).andReturn()
+
+        then:
+        !result.request.asyncStarted
+        result.response.status >= 400
+    }
+
+    private static Map row(String name, Map overrides = [:]) {
+        return [email: "${name}@import.test.io", firstName: "Import", lastName: name, password: "password",
+                roles: ["ROLE_USER_READ_GLOBAL"]] + overrides
+    }
+
+    private static List<Map> lines(MvcResult result) {
+        return result.response.contentAsString.readLines().findAll { !it.trim().isEmpty() }.collect {
+            new JsonSlurper().parseText(it) as Map
+        }
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
@@ -0,0 +1,139 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class MemberPagingTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Shared
+    String bearer
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+        }
+    }
+
+    def "following next visits every member once and the last page has no next"() {
+        given:
+        def groupId = addGroup("Paged")
+        def members = (1..5).collect { addUser(groupId, "member${it}@paged.io") }
+        def deleted = addUser(groupId, "deleted@paged.io")
+        softDelete(deleted)
+
+        when:
+        def first = page(groupId, null, 2)
+        def second = page(groupId, first.next, 2)
+        def last = page(groupId, second.next, 2)
+
+        then:
+        [first, second, last]*.content*.size() == [2, 2, 1]
+        [first, second, last]*.size == [2, 2, 2]
+        first.next == first.content[1].id
+        second.next == second.content[1].id
+        last.next == null
+
+        and:
+        def visited = [first, second, last].collectMany { it.content*.id }
+        visited.unique(false) == visited
+        visited as Set == members as Set
+    }
+
+    def "members removed before the cursor do not shift the next page"() {
+        given:
+        def groupId = addGroup("Stable")
+        (1..4).each { addUser(groupId, "member${it}@stable.io") }
+        def first = page(groupId, null, 2)
+        def expected = page(groupId, first.next, 2).content*.id
+
+        when:
+        first.content.each { softDelete(it.id) }
+        def second = page(groupId, first.next, 2)
+
+        then:
+        second.content*.id == expected
+        second.next == null
+    }
+
+    def "a page exactly as large as the group has no next"() {
+        given:
+        def groupId = addGroup("Exact")
+        (1..3).each { addUser(groupId, "member${it}@exact.io") }
+
+        expect:
+        page(groupId, null, 3).next == null
+        page(groupId, null, 3).content.size() == 3
+    }
+
+    def "oversized pages are capped"() {
+        expect:
+        page(addGroup("Capped"), null, 100000).size == 500
+    }
+
+    private Map page(String groupId, String after, int size) {
+        def request = get("/groups/${groupId}/users").param("size", String.valueOf(size))
+        if (after != null) {
+            request.param("after", after)
+        }
+        return json(perform(request))
+    }
+
+    // the members belong to another tenant than the admin, whose deletes are limited to its own tenant
+    private void softDelete(String userId) {
+        jdbcTemplate.update("UPDATE user SET deleted = true WHERE id = ?", userId)
+    }
+
+    private String addGroup(String name) {
+        return json(perform(post("/groups")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([name: name, contactEmail: "group@${name.toLowerCase()}.io".toString(),
+                                            type: "CLIENT"])))).id
+    }
+
+    private String addUser(String groupId, String email) {
+        return json(perform(post("/groups/${groupId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email : email, firstName: "Member", lastName: "Paging",
+                                            locale: "EN", type: "USER", password: "password", enabled: true])))).id
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
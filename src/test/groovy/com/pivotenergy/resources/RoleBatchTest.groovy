@@ -0,0 +1,151 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class RoleBatchTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+    private static final Map READ_MEASURES = [scope: "ROLE_USER", action: "READ", target: "MEASURES"]
+    private static final Map UPDATE_BUILDINGS = [scope: "ROLE_USER", action: "UPDATE", target: "BUILDINGS"]
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+    }
+
+    def "granting adds the roles users lack and skips the ones they hold"() {
+        given:
+        def holder = addUser(tenantId, "holder@grant.batch.io")
+        def other = addUser(tenantId, "other@grant.batch.io")
+        perform(post("/users/${holder}/roles").contentType(MediaType.APPLICATION_JSON).content(JsonOutput.toJson(READ_MEASURES)))
+
+        when:
+        def result = json(perform(batch("grant", [holder, other], [READ_MEASURES, UPDATE_BUILDINGS])))
+
+        then:
+        result.users == 2
+        result.changed == 3
+        result.unchanged == 1
+
+        and: "every user holds each role exactly once"
+        roles(holder).sort() == ["ROLE_USER_READ_MEASURES", "ROLE_USER_UPDATE_BUILDINGS"]
+        roles(other).sort() == ["ROLE_USER_READ_MEASURES", "ROLE_USER_UPDATE_BUILDINGS"]
+    }
+
+    def "revoking removes the roles users hold and counts the ones they lack"() {
+        given:
+        def both = addUser(tenantId, "both@revoke.batch.io")
+        def one = addUser(tenantId, "one@revoke.batch.io")
+        perform(batch("grant", [both], [READ_MEASURES, UPDATE_BUILDINGS]))
+        perform(batch("grant", [one], [UPDATE_BUILDINGS]))
+
+        when:
+        def result = json(perform(batch("revoke", [both, one], [READ_MEASURES, UPDATE_BUILDINGS])))
+
+        then:
+        result.users == 2
+        result.changed == 3
+        result.unchanged == 1
+        roles(both).isEmpty()
+        roles(one).isEmpty()
+    }
+
+    def "a batch naming a user of another tenant changes nothing"() {
+        given:
+        def member = addUser(tenantId, "member@tenant.batch.io")
+        def groupId = json(perform(post("/groups")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([name: "Batch", contactEmail: "group@batch.io", type: "CLIENT"])))).id
+        def stranger = addUser(groupId, "stranger@tenant.batch.io")
+
+        when:
+        def granted = send(batch("grant", [member, stranger], [READ_MEASURES]))
+        def revoked = send(batch("revoke", [member, "unknown"], [READ_MEASURES]))
+
+        then:
+        granted.response.status == 404
+        revoked.response.status == 404
+        roles(member).isEmpty()
+    }
+
+    def "a batch without roles is rejected"() {
+        when:
+        def result = send(batch("grant", [addUser(tenantId, "empty@batch.io")], []))
+
+        then:
+        result.response.status == 400
+    }
+
+    private static MockHttpServletRequestBuilder batch(String operation, List<String> userIds, List<Map> roles) {
+        return post("/users/roles/" + operation)
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([userIds: userIds, roles: roles]))
+    }
+
+    private List<String> roles(String userId) {
+        return json(perform(get("/users/" + userId))).roles*.role as List<String>
+    }
+
+    private String addUser(String groupId, String email) {
+        return json(perform(post("/groups/${groupId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email : email, firstName: "Role", lastName: "Batch",
+                                            locale: "EN", type: "USER", password: "password", enabled: true])))).id
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        MvcResult result = send(builder)
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private MvcResult send(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        return mvc.perform(builder).andReturn()
+    }
+}
@@ -0,0 +1,127 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserProjectionRepositoryImpl
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class SparseFieldsetTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String adminId
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            def admin = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get()
+            adminId = admin.id
+            tenantId = admin.groupId
+        }
+    }
+
+    def "a detail read only carries the requested properties in request order"() {
+        when:
+        def user = json(perform(get("/users/${adminId}").param("fields", "lastName,email")))
+
+        then:
+        user.keySet() as List == ["lastName", "email"]
+        user.email == ADMIN_EMAIL
+    }
+
+    def "every item of a list read only carries the requested properties"() {
+        when:
+        def users = json(perform(get("/users").param("fields", "id,email").param("mode", "SLICE")))
+
+        then:
+        !users.content.isEmpty()
+        users.content.every { it.keySet() as List == ["id", "email"] }
+        users.content*.email.contains(ADMIN_EMAIL)
+        users.totalElements == null
+    }
+
+    def "group reads are projected the same way"() {
+        when:
+        def group = json(perform(get("/groups/${tenantId}").param("fields", "name")))
+
+        then:
+        group.keySet() as List == ["name"]
+    }
+
+    @Unroll
+    def "requesting #fields is rejected"() {
+        when:
+        def result = mvc.perform(get(path).param("fields", fields)
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)).andReturn()
+
+        then:
+        result.response.status == 400
+
+        where:
+        path     | fields
+        "/users" | "email,password"
+        "/users" | "roles"
+        "/users" | "group"
+    }
+
+    def "unknown sort properties are rejected before a query is built"() {
+        when:
+        def result = mvc.perform(get("/users").param("fields", "email").param("sort", "password")
+                .header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)).andReturn()
+
+        then:
+        result.response.status == 400
+    }
+
+    def "duplicate fields are selected once"() {
+        expect:
+        UserProjectionRepositoryImpl.PROJECTION.resolve(["email", " email", "id"]) == ["email", "id"]
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
@@ -0,0 +1,349 @@
+package com.pivotenergy.resources
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.domain.Group
+import com.pivotenergy.domain.Role
+import com.pivotenergy.domain.User
+import com.pivotenergy.repositories.GroupRepository
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.HttpMethod
+import org.springframework.http.MediaType
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.support.TransactionTemplate
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+
+import static com.pivotenergy.security.JWTSecurityService.AUTHORIZATION_REFRESH
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.request
+
+/**
+ * Statement budgets per endpoint. Every endpoint runs against a tenant with enough users and roles
+ * that a query per row blows its budget, next to other tenants whose rows must never be read.
+ *
+ * Budgets are upper bounds with the second level cache disabled, lower them when an endpoint gets
+ * cheaper. Statements which are neither bounded by a row limit nor restricted by a key column are
+ * counted as scans, only list and export endpoints may issue them.
+ */
+@SpringBootTest(properties = [
+        "spring.jpa.properties.hibernate.session_factory.statement_inspector=com.pivotenergy.resources.StatementRecorder",
+        "spring.jpa.properties.hibernate.cache.use_second_level_cache=false",
+        "spring.jpa.properties.hibernate.cache.use_query_cache=false",
+        // the relay only runs once at startup, its statements would be counted against the endpoints
+        "pivot.changes.relay-interval=3600000",
+        "eureka.client.enabled=false"
+])
+@AutoConfigureMockMvc
+class StatementCountTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+    private static final int TENANT_USERS = 60
+    private static final int OTHER_TENANTS = 5
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    GroupRepository groupRepository
+    @Autowired
+    UserRepository userRepository
+    @Autowired
+    PlatformTransactionManager transactionManager
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    Map<String, String> ids = [:]
+    @Shared
+    String bearer
+
+    def setup() {
+        if (bearer == null) {
+            seed()
+            bearer = login().response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+        }
+    }
+
+    @Unroll
+    def "#method #path issues at most #budget statements and #scans scans"() {
+        given:
+        def builder = request(HttpMethod.valueOf(method), expand(path))
+        if (body != null) {
+            builder.contentType(path.endsWith("/import") ? "application/x-ndjson" : MediaType.APPLICATION_JSON_VALUE)
+                    .content(expand(body))
+        }
+
+        when:
+        def statements = StatementRecorder.record { perform(builder) }
+
+        then:
+        statements.size() <= budget
+        statements.findAll { !StatementRecorder.isSelective(it) }.size() <= scans
+
+        // every write also records a change event
+        where:
+        method   | path                                       | body                            | budget | scans
+        "GET"    | "/users"                                   | null                            | 5      | 1
+        "GET"    | "/users?mode=SLICE"                        | null                            | 4      | 0
+        "GET"    | "/users?fields=email,firstName"            | null                            | 2      | 1
+        "GET"    | "/users/search?q=member1"                  | null                            | 2      | 1
+        "POST"   | "/users/lookup"                            | '{lookup}'                      | 1      | 0
+        "GET"    | "/users/export"                            | null                            | 1      | 1
+        "GET"    | "/users/export?format=CSV&fields=id,email" | null                            | 1      | 1
+        "GET"    | "/users/{member}"                          | null                            | 2      | 0
+        "GET"    | "/users/{member}?fields=email,lastName"    | null                            | 1      | 0
+        "PATCH"  | "/users/{member}"                          | '{"firstName":"Patched"}'       | 5      | 0
+        "DELETE" | "/users/{spareUser}"                       | null                            | 3      | 0
+        "POST"   | "/users/{member}/roles"                    | '{role}'                        | 6      | 0
+        "DELETE" | "/users/{member}/roles/{memberRole}"       | null                            | 5      | 0
+        "POST"   | "/users/roles/grant"                       | '{batch}'                       | 7      | 0
+        "POST"   | "/users/roles/revoke"                      | '{batch}'                       | 6      | 0
+        "GET"    | "/users/metadata/types"                    | null                            | 0      | 0
+        "GET"    | "/users/metadata/roles/scopes"             | null                            | 0      | 0
+        "GET"    | "/users/metadata/roles/actions"            | null                            | 0      | 0
+        "GET"    | "/users/metadata/roles/targets"            | null                            | 0      | 0
+        "POST"   | "/groups"                                  | '{group}'                       | 3      | 0
+        "GET"    | "/groups"                                  | null                            | 3      | 1
+        "GET"    | "/groups?mode=SLICE"                       | null                            | 1      | 0
+        "GET"    | "/groups?fields=name,type"                 | null                            | 2      | 1
+        "GET"    | "/groups/export"                           | null                            | 1      | 1
+        "GET"    | "/groups/{tenant}"                         | null                            | 1      | 0
+        "GET"    | "/groups/{tenant}?fields=name"             | null                            | 1      | 0
+        "PATCH"  | "/groups/{spareGroup}"                     | '{"name":"Patched Group"}'      | 4      | 0
+        // members and their refresh tokens are updated by group, in one statement each
+        "DELETE" | "/groups/{deletedGroup}"                   | null                            | 4      | 2
+        "GET"    | "/groups/{tenant}/users"                   | null                            | 4      | 0
+        "GET"    | "/groups/{tenant}/users?after={member}"    | null                            | 4      | 0
+        "POST"   | "/groups/{tenant}/users"                   | '{user}'                        | 6      | 0
+        "POST"   | "/groups/{tenant}/users/bulk"              | '{bulk}'                        | 7      | 0
+        "POST"   | "/groups/{tenant}/users/import"            | '{import}'                      | 7      | 0
+        "GET"    | "/groups/metadata/types"                   | null                            | 0      | 0
+    }
+
+    // POST /users is not covered, a user can only be created with a group through POST /groups/{id}/users
+
+    @Unroll
+    def "PUT #path issues at most #budget statements"() {
+        given: "the current representation with one changed property"
+        def current = perform(request(HttpMethod.GET, expand(path)))
+        def representation = new JsonSlurper().parseText(current.response.contentAsString) as Map
+        representation[property] = "Replaced"
+
+        when:
+        def statements = StatementRecorder.record {
+            perform(request(HttpMethod.PUT, expand(path))
+                    .header(HttpHeaders.IF_MATCH, current.response.getHeader(HttpHeaders.ETAG))
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .content(JsonOutput.toJson(representation)))
+        }
+
+        then:
+        statements.size() <= budget
+        statements.every { StatementRecorder.isSelective(it) }
+
+        where:
+        path              | property    | budget
+        "/users/{member}" | "lastName"  | 7
+        "/groups/{other}" | "name"      | 5
+    }
+
+    @Unroll
+    def "conditional GET #path is answered with #budget statement"() {
+        when:
+        def statements = StatementRecorder.record {
+            def result = perform(request(HttpMethod.GET, expand(path)).header(HttpHeaders.IF_NONE_MATCH, "*"))
+            assert result.response.status == 304
+        }
+
+        then:
+        statements.size() <= budget
+        statements.every { StatementRecorder.isSelective(it) }
+
+        where:
+        path               | budget
+        "/users/{member}"  | 1
+        "/groups/{tenant}" | 1
+    }
+
+    def "lookups answer in request order and repeated lookups of found users are served from the cache"() {
+        given:
+        def requested = [ids.member, "missing", ids.colleague, ids.member]
+
+        when:
+        def result = new JsonSlurper().parseText(perform(lookup(requested)).response.contentAsString)
+        def statements = StatementRecorder.record { perform(lookup([ids.colleague, ids.member])) }
+
+        then:
+        result.results*.id == requested
+        result.results*.found == [true, false, true, true]
+        result.results[0].user.email == "member1@statements.test.io"
+        result.results[1].user == null
+        statements.isEmpty()
+    }
+
+    def "login, refresh and logout stay within their budgets"() {
+        when:
+        MvcResult loggedIn = null
+        MvcResult refreshed = null
+        def loginStatements = StatementRecorder.record { loggedIn = login() }
+        def refreshStatements = StatementRecorder.record {
+            refreshed = perform(request(HttpMethod.POST, "/refresh/" + loggedIn.response.getHeader(AUTHORIZATION_REFRESH)))
+        }
+        def logoutStatements = StatementRecorder.record {
+            perform(request(HttpMethod.DELETE, "/logout/" + refreshed.response.getHeader(AUTHORIZATION_REFRESH)))
+        }
+
+        then:
+        loginStatements.size() <= 6
+        refreshStatements.size() <= 8
+        logoutStatements.size() <= 3
+        (loginStatements + refreshStatements + logoutStatements).every { StatementRecorder.isSelective(it) }
+    }
+
+    def "queries restricted only by tenant and soft delete flag are reported as scans"() {
+        expect:
+        StatementRecorder.isSelective(sql) == selective
+
+        where:
+        sql                                                                                               | selective
+        "select count(user0_.id) as col_0_0_ from user user0_ where user0_.deleted=0 and user0_.group_id=?" | false
+        "select group0_.id as id1_1_ from user_group group0_ where group0_.deleted=0"                      | false
+        "select user0_.id as id1_2_ from user user0_"                                                      | false
+        "select user0_.id as id1_2_ from user user0_ where user0_.deleted=0 and user0_.id=?"               | true
+        "select user0_.id as id1_2_ from user user0_ where user0_.group_id=? order by user0_.id limit ?"   | true
+        "select roles0_.user_id as user_id9_1_0_ from role roles0_ where roles0_.user_id in (?, ?)"        | true
+        "select user0_.email as col_0_0_ from user user0_ where user0_.email in (?)"                       | true
+        "update user set deleted=1 where id=? and group_id=?"                                              | true
+        "insert into user (id, email) values (?, ?)"                                                       | true
+    }
+
+    private MvcResult login() {
+        String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+        return perform(request(HttpMethod.POST, "/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        if (result.request.asyncStarted) {
+            // streaming responses are written after the handler returns, their statements count too
+            result = mvc.perform(asyncDispatch(result)).andReturn()
+        }
+
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private static MockHttpServletRequestBuilder lookup(List<String> userIds) {
+        return request(HttpMethod.POST, "/users/lookup")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([ids: userIds]))
+    }
+
+    private String expand(String template) {
+        return template.replaceAll(/\{(\w+)\}/) { match, key -> ids.containsKey(key) ? ids[key] : match }
+    }
+
+    private void seed() {
+        String hash = new BCryptPasswordEncoder().encode("password")
+        List<String> members = []
+        User member = null
+
+        // seeded before there is a session, in several tenants
+        TenantFilter.unfiltered(entityManager, {
+            new TransactionTemplate(transactionManager).execute {
+                Group tenant = groupRepository.findByContactEmail("axle@pivotenergy.com").get()
+                ids.tenant = tenant.id
+
+                TENANT_USERS.times { index -> members << user(tenant, "member${index}@statements.test.io", hash).id }
+                member = userRepository.findByEmail("member1@statements.test.io").get()
+                ids.spareUser = user(tenant, "spare@statements.test.io", hash).id
+
+                OTHER_TENANTS.times { index ->
+                    Group other = group("other${index}")
+                    ids.other = other.id
+                    TENANT_USERS.times { user(other, "member${it}@other${index}.statements.test.io", hash) }
+                }
+                ids.spareGroup = group("spare").id
+                ids.deletedGroup = group("deleted").id
+                return null
+            }
+        })
+
+        ids.member = member.id
+        ids.colleague = members[2]
+        ids.memberRole = member.roles.first().id
+
+        ids.role = JsonOutput.toJson([scope: "ROLE_USER", action: "READ", target: "MEASURES"])
+        ids.batch = JsonOutput.toJson([userIds: members.take(40),
+                                       roles  : [[scope: "ROLE_USER", action: "UPDATE", target: "BASELINES"]]])
+        ids.lookup = JsonOutput.toJson([ids: members.take(40).reverse() + ["missing"]])
+        ids.group = JsonOutput.toJson([name: "Created Group", contactEmail: "created@statements.test.io", type: "CLIENT"])
+        ids.user = JsonOutput.toJson([email    : "added@statements.test.io", firstName: "Added", lastName: "User",
+                                      locale   : "EN", type: "USER", password: "password", enabled: true])
+        ids.bulk = JsonOutput.toJson((0..<10).collect { index ->
+            [email: "bulk${index}@statements.test.io", firstName: "Bulk", lastName: "User${index}",
+             password: "password", roles: ["ROLE_USER_READ_GLOBAL", "ROLE_USER_UPDATE_BUILDINGS"]]
+        })
+        ids["import"] = (0..<10).collect { index ->
+            JsonOutput.toJson([email: "import${index}@statements.test.io", firstName: "Import", lastName: "User${index}",
+                               password: "password", roles: ["ROLE_USER_READ_GLOBAL"]])
+        }.join("\n")
+    }
+
+    private Group group(String name) {
+        return groupRepository.save(new Group()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setName("Statements ${name}")
+                .setContactEmail("${name}@statements.test.io")
+                .setType(Group.Type.CLIENT))
+    }
+
+    private User user(Group group, String email, String hash) {
+        return userRepository.save(new User()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setGroup(group)
+                .setType(User.Type.USER)
+                .setLocale("EN")
+                .setEmail(email)
+                .setFirstName("First")
+                .setLastName(email.substring(0, email.indexOf("@")))
+                .setEnabled(true)
+                .setEncodedPassword(hash)
+                .addRole(new Role()
+                        .setCreatedAt(new Date())
+                        .setCreatedBy("1")
+                        .setUpdatedAt(new Date())
+                        .setUpdatedBy("1")
+                        .setRole(Role.Scope.ROLE_USER, Role.Action.READ, Role.Target.GLOBAL))
+                .addRole(new Role()
+                        .setCreatedAt(new Date())
+                        .setCreatedBy("1")
+                        .setUpdatedAt(new Date())
+                        .setUpdatedBy("1")
+                        .setRole(Role.Scope.ROLE_USER, Role.Action.UPDATE, Role.Target.BUILDINGS)))
+    }
+}
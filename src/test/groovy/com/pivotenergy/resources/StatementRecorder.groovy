@@ -0,0 +1,67 @@
+package com.pivotenergy.resources
+
+import org.hibernate.resource.jdbc.spi.StatementInspector
+
+import java.util.concurrent.CopyOnWriteArrayList
+
+/**
+ * Records every statement Hibernate prepares. Registered by class name through
+ * {@code hibernate.session_factory.statement_inspector}, so recorded statements are kept statically
+ * and shared by all sessions, including those of streaming responses running on other threads.
+ */
+class StatementRecorder implements StatementInspector {
+    private static final List<String> STATEMENTS = new CopyOnWriteArrayList<>()
+
+    /**
+     * Columns which never narrow a statement down to a few rows on their own: the tenant and the soft delete flag
+     */
+    private static final Set<String> UNSELECTIVE_COLUMNS = ["group_id", "deleted"] as Set
+
+    @Override
+    String inspect(String sql) {
+        STATEMENTS << sql
+        return sql
+    }
+
+    /**
+     * @param action work issuing the statements
+     * @return statements prepared while the action ran
+     */
+    static List<String> record(Closure action) {
+        STATEMENTS.clear()
+        action.call()
+        return new ArrayList<>(STATEMENTS)
+    }
+
+    /**
+     * A query is selective if it is bounded by a row limit or restricted by a key column, such as an
+     * id, a foreign key other than the tenant, an email or a token. Queries which are only restricted
+     * by tenant and soft delete flag read every row of a tenant, or of all tenants.
+     *
+     * @param sql statement as prepared by Hibernate
+     * @return true if the statement cannot touch more than a bounded number of rows
+     */
+    static boolean isSelective(String sql) {
+        String statement = sql.toLowerCase(Locale.ROOT).replaceAll(/\s+/, " ").trim()
+        if (statement.startsWith("insert") || !(statement.startsWith("select") || statement.startsWith("update")
+                || statement.startsWith("delete"))) {
+            return true
+        }
+        if (statement =~ /\blimit\s+\?|\bfetch first\b/) {
+            return true
+        }
+
+        int where = statement.lastIndexOf(" where ")
+        if (where < 0) {
+            return false
+        }
+
+        String predicate = statement.substring(where + " where ".length()).replaceFirst(/ (order|group) by .*$/, "")
+        def restrictions = predicate =~ /(?:\w+\.)?(\w+)\)?\s*(?:=|>|<|\bin\s*\(|\blike\b)/
+        return restrictions.any { match ->
+            String column = match[1]
+            !UNSELECTIVE_COLUMNS.contains(column) && (column == "id" || column.endsWith("_id")
+                    || column == "email" || column.endsWith("_email") || column == "token")
+        }
+    }
+}
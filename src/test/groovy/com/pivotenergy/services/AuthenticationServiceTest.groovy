@@ -16,6 +16,8 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
 import spock.lang.Shared
 import spock.lang.Specification
 
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
 import java.time.Clock
 import java.time.LocalDateTime
 import java.time.OffsetDateTime
@@ -28,6 +30,8 @@ class AuthenticationServiceTest extends Specification {
     UserRepository userRepository
     @Autowired
     UserRefreshTokenRepository refreshTokenRepository
+    @PersistenceContext
+    EntityManager entityManager
 
     @Shared static def user
     @Shared static def email = "john.doe@test.io"
@@ -39,6 +43,7 @@ class AuthenticationServiceTest extends Specification {
         authenticationService = new AuthenticationService(userRepository,
                 refreshTokenRepository,
                 passwordEncoder, new JWTSecurityService("secret", 60000))
+        authenticationService.entityManager = entityManager
         def group = groupRepository.save(new Group()
                 .setCreatedAt(new Date())
                 .setCreatedBy("1")
@@ -63,7 +68,7 @@ class AuthenticationServiceTest extends Specification {
                 .setEnabled(true)
                 .setExpired(false)
                 .setLocked(false)
-                .setPassword(password)
+                .setEncodedPassword(passwordEncoder.encode(password))
                 .addRole(new Role()
                         .setCreatedAt(new Date())
                         .setCreatedBy("1")
@@ -0,0 +1,69 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.domain.Group
+import com.pivotenergy.exceptions.PivotEntityNotFoundException
+import com.pivotenergy.repositories.GroupRepository
+import org.hibernate.SessionFactory
+import org.hibernate.stat.Statistics
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.context.SpringBootTest
+import spock.lang.Specification
+
+import javax.persistence.EntityManagerFactory
+
+@SpringBootTest(properties = ["pivot.cache.statistics=true", "eureka.client.enabled=false"])
+class GroupCacheTest extends Specification {
+    private static final String REGION = Group.class.name
+
+    @Autowired
+    GroupService groupService
+    @Autowired
+    GroupRepository groupRepository
+    @Autowired
+    EntityManagerFactory entityManagerFactory
+
+    Statistics statistics
+
+    def setup() {
+        statistics = entityManagerFactory.unwrap(SessionFactory).statistics
+    }
+
+    def "repeated group reads are answered by the second level cache"() {
+        given:
+        def id = groupRepository.save(group("cached")).id
+        statistics.clear()
+
+        when: "the group is read in ten transactions"
+        10.times { groupService.getById(id) }
+        def region = statistics.getDomainDataRegionStatistics(REGION)
+
+        then: "only the first read can miss"
+        region.hitCount >= 9
+        region.missCount <= 1
+        statistics.prepareStatementCount <= 1
+    }
+
+    def "a soft deleted group is evicted and no longer found"() {
+        given:
+        def id = groupRepository.save(group("evicted")).id
+        groupService.getById(id)
+
+        when:
+        groupRepository.softDeleteById(id)
+        groupService.getById(id)
+
+        then:
+        thrown(PivotEntityNotFoundException)
+    }
+
+    private static Group group(String name) {
+        return new Group()
+                .setCreatedAt(new Date())
+                .setCreatedBy("1")
+                .setUpdatedAt(new Date())
+                .setUpdatedBy("1")
+                .setName("${name}@group-cache.io")
+                .setContactEmail("${name}@group-cache.io")
+                .setType(Group.Type.CLIENT)
+    }
+}
@@ -0,0 +1,155 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.jdbc.core.JdbcTemplate
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import static com.pivotenergy.security.JWTSecurityService.AUTHORIZATION_REFRESH
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.delete
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class GroupDeleteTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    JdbcTemplate jdbcTemplate
+
+    @Shared
+    String bearer
+
+    def setup() {
+        if (bearer == null) {
+            bearer = login(ADMIN_EMAIL, ADMIN_PASSWORD).response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+        }
+    }
+
+    def "deleting a group deletes its members and revokes their refresh tokens"() {
+        given:
+        def groupId = addGroup("Cascade")
+        def members = ["first@cascade.io", "second@cascade.io"].collect { addUser(groupId, it) }
+        def refreshToken = login("first@cascade.io", "password").response.getHeader(AUTHORIZATION_REFRESH)
+        def versions = members.collect { member(it).version }
+
+        when:
+        def result = send(delete("/groups/" + groupId))
+
+        then:
+        result.response.status == 204
+        members.collect { member(it) }.every { it.deleted && it.deleted_at != null }
+        members.collect { member(it).version } == versions.collect { it + 1 }
+
+        and:
+        jdbcTemplate.queryForObject("SELECT COUNT(*) FROM user_refresh_token WHERE group_id = ?", Long, groupId) == 0
+
+        and: "members can neither log in nor refresh their session"
+        login("first@cascade.io", "password").response.status == 404
+        send(post("/refresh/" + refreshToken)).response.status == 401
+    }
+
+    def "members deleted before the group keep their deletion"() {
+        given:
+        def groupId = addGroup("Earlier")
+        def earlier = addUser(groupId, "earlier@cascade.io")
+        jdbcTemplate.update("UPDATE user SET deleted = true, deleted_at = ? WHERE id = ?",
+                new Date(System.currentTimeMillis() - 60000), earlier)
+        def before = member(earlier)
+
+        when:
+        send(delete("/groups/" + groupId))
+
+        then:
+        member(earlier) == before
+    }
+
+    def "deleting a deleted group is not found and changes nothing"() {
+        given:
+        def groupId = addGroup("Twice")
+        def memberId = addUser(groupId, "member@twice.io")
+        send(delete("/groups/" + groupId))
+        def deleted = member(memberId)
+
+        when:
+        def result = send(delete("/groups/" + groupId))
+
+        then:
+        result.response.status == 404
+        member(memberId) == deleted
+    }
+
+    @Unroll
+    def "deleting #target through the user endpoint leaves the members of another tenant alone"() {
+        given:
+        def groupId = addGroup("Stranger ${target}")
+        def memberId = addUser(groupId, "member@${target.replace(' ', '.')}.io")
+        def before = member(memberId)
+
+        when:
+        def result = send(delete("/users/" + (target == "a member" ? memberId : groupId)))
+
+        then:
+        result.response.status == 404
+        member(memberId) == before
+
+        where:
+        target << ["a member", "their group"]
+    }
+
+    private Map member(String id) {
+        return jdbcTemplate.queryForMap("SELECT deleted, deleted_at, version FROM user WHERE id = ?", id)
+                .collectEntries { key, value -> [key.toLowerCase(), value] }
+    }
+
+    private MvcResult login(String email, String password) {
+        String credentials = "${email}:${password}".bytes.encodeBase64().toString()
+        return mvc.perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials)).andReturn()
+    }
+
+    private String addGroup(String name) {
+        return json(perform(post("/groups")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([name: name, contactEmail: "group@${name.replace(' ', '.').toLowerCase()}.io".toString(),
+                                            type: "CLIENT"])))).id
+    }
+
+    private String addUser(String groupId, String email) {
+        return json(perform(post("/groups/${groupId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson([email : email, firstName: "Group", lastName: "Delete",
+                                            locale: "EN", type: "USER", password: "password", enabled: true])))).id
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        MvcResult result = send(builder)
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+
+    private MvcResult send(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        return mvc.perform(builder).andReturn()
+    }
+}
@@ -0,0 +1,111 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.domain.Group
+import com.pivotenergy.repositories.GroupRepository
+import org.springframework.data.domain.Page
+import org.springframework.data.domain.PageImpl
+import org.springframework.data.domain.PageRequest
+import org.springframework.data.domain.Pageable
+import org.springframework.data.domain.Slice
+import org.springframework.data.domain.SliceImpl
+import spock.lang.Specification
+
+import java.time.Duration
+import java.util.function.LongSupplier
+
+class ListModeTest extends Specification {
+    def repository = Mock(GroupRepository)
+    def pageable = PageRequest.of(2, 10)
+    def groups = (1..10).collect { new Group().setName("group${it}") }
+
+    def service = new BaseService<Group, Group, GroupRepository>(Group, repository) {
+        @Override
+        Group view(Group group) { group }
+
+        @Override
+        Slice<Group> findSlice(Pageable request) { repository.findAllSliced(request) }
+
+        @Override
+        Optional<Long> findVersion(String id) { Optional.empty() }
+
+        @Override
+        String countKey() { "tenant" }
+
+        @Override
+        Group patch(String id, Map<String, Object> patch, Long expectedVersion) { null }
+
+        @Override
+        void softDelete(String id) {}
+
+        @Override
+        void hardDelete(String id) {}
+    }
+
+    def "PAGE runs the exact page query with its count"() {
+        when:
+        def result = service.getCollection(pageable, ListMode.PAGE)
+
+        then:
+        1 * repository.findAll(pageable) >> new PageImpl<>(groups, pageable, 42)
+        0 * repository.findAllSliced(_)
+        result instanceof Page
+        (result as Page).totalElements == 42
+    }
+
+    def "SLICE answers from the slice without counting"() {
+        when:
+        def result = service.getCollection(pageable, ListMode.SLICE)
+
+        then:
+        1 * repository.findAllSliced(pageable) >> new SliceImpl<>(groups, pageable, true)
+        0 * repository.count()
+        0 * repository.findAll(_)
+        !(result instanceof Page)
+        result.content == groups
+        result.hasNext()
+    }
+
+    def "APPROXIMATE counts once and serves the cached total to later requests"() {
+        when:
+        def first = service.getCollection(pageable, ListMode.APPROXIMATE) as Page
+        def second = service.getCollection(pageable, ListMode.APPROXIMATE) as Page
+
+        then:
+        2 * repository.findAllSliced(pageable) >> new SliceImpl<>(groups, pageable, true)
+        1 * repository.count() >> 42
+        first.totalElements == 42
+        second.totalElements == 42
+    }
+
+    def "an approximate total never reports fewer elements than the slice has seen"() {
+        when: "the cached count is older than the rows of the page"
+        def result = service.getCollection(pageable, ListMode.APPROXIMATE) as Page
+
+        then:
+        1 * repository.findAllSliced(pageable) >> new SliceImpl<>(groups, pageable, true)
+        1 * repository.count() >> 5
+        // 20 rows before the page, 10 on it and at least one after it
+        result.totalElements == 31
+    }
+
+    def "cached counts are kept per key until they expire"() {
+        given:
+        def calls = 0
+        def counter = { ++calls } as LongSupplier
+
+        when:
+        def cached = new ApproximateCounter(Duration.ofMinutes(1))
+        def counts = [cached.count("tenant", counter), cached.count("tenant", counter), cached.count("other", counter),
+                      cached.count("tenant", counter)]
+
+        then:
+        counts == [1L, 1L, 2L, 1L]
+
+        when:
+        def expiring = new ApproximateCounter(Duration.ZERO)
+
+        then:
+        expiring.count("tenant", counter) == 3L
+        expiring.count("tenant", counter) == 4L
+    }
+}
@@ -0,0 +1,60 @@
+package com.pivotenergy.services
+
+import com.fasterxml.jackson.databind.ObjectMapper
+import com.pivotenergy.domain.User
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder
+import spock.lang.Specification
+
+class PasswordHasherTest extends Specification {
+    def hasher = new PasswordHasher(2)
+
+    def cleanup() {
+        hasher.destroy()
+    }
+
+    def "setting a password keeps it in plain text until it is hashed"() {
+        when:
+        def user = new User().setPassword("secret")
+
+        then:
+        user.password == null
+        user.rawPassword == "secret"
+        user.passwordPresent
+
+        when:
+        hasher.hashPassword(user)
+
+        then:
+        user.rawPassword == null
+        new BCryptPasswordEncoder().matches("secret", user.password)
+    }
+
+    def "users without a new password keep their hash"() {
+        given:
+        def user = new User().setEncodedPassword("hash")
+
+        when:
+        hasher.hashPassword(user)
+
+        then:
+        user.password == "hash"
+    }
+
+    def "a request body sets the plain text password and never the hash"() {
+        when:
+        def user = new ObjectMapper().readValue(
+                '{"email":"john.doe@test.io","password":"secret","encodedPassword":"chosen"}', User)
+
+        then:
+        user.password == null
+        user.rawPassword == "secret"
+    }
+
+    def "a user with a plain text password cannot be saved"() {
+        when:
+        new User().setEmail("john.doe@test.io").setPassword("secret").requireHashedPassword()
+
+        then:
+        thrown(IllegalStateException)
+    }
+}
@@ -0,0 +1,146 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.datasource.TenantFilter
+import com.pivotenergy.repositories.UserRepository
+import com.pivotenergy.security.JWTSecurityService
+import groovy.json.JsonOutput
+import groovy.json.JsonSlurper
+import org.springframework.beans.factory.annotation.Autowired
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc
+import org.springframework.boot.test.context.SpringBootTest
+import org.springframework.boot.test.context.TestConfiguration
+import org.springframework.context.annotation.Bean
+import org.springframework.context.annotation.Primary
+import org.springframework.http.HttpHeaders
+import org.springframework.http.MediaType
+import org.springframework.test.web.servlet.MockMvc
+import org.springframework.test.web.servlet.MvcResult
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder
+import org.springframework.transaction.support.TransactionSynchronizationManager
+import spock.lang.Shared
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.persistence.EntityManager
+import javax.persistence.PersistenceContext
+import java.util.concurrent.CopyOnWriteArrayList
+
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.patch
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put
+
+/**
+ * bcrypt takes tens of milliseconds, no request may hash while its transaction holds a pooled connection
+ */
+@SpringBootTest(properties = "eureka.client.enabled=false")
+@AutoConfigureMockMvc
+class PasswordHashingTest extends Specification {
+    private static final String ADMIN_EMAIL = "app-admin@metro.io"
+    private static final String ADMIN_PASSWORD = "2S33k0u7@2016"
+
+    @TestConfiguration
+    static class RecordingHasherConfiguration {
+        @Bean
+        @Primary
+        RecordingHasher recordingHasher() {
+            return new RecordingHasher()
+        }
+    }
+
+    /**
+     * Records for every hash whether a transaction was active on the hashing caller
+     */
+    static class RecordingHasher extends PasswordHasher {
+        final List<Boolean> inTransaction = new CopyOnWriteArrayList<>()
+
+        RecordingHasher() {
+            super(2)
+        }
+
+        @Override
+        String encode(String raw) {
+            inTransaction << TransactionSynchronizationManager.isActualTransactionActive()
+            return super.encode(raw)
+        }
+    }
+
+    @Autowired
+    MockMvc mvc
+    @Autowired
+    RecordingHasher hasher
+    @Autowired
+    UserRepository userRepository
+    @PersistenceContext
+    EntityManager entityManager
+
+    @Shared
+    String bearer
+    @Shared
+    String tenantId
+
+    def setup() {
+        if (bearer == null) {
+            String credentials = "${ADMIN_EMAIL}:${ADMIN_PASSWORD}".bytes.encodeBase64().toString()
+            bearer = perform(post("/login").header(HttpHeaders.AUTHORIZATION, "Basic " + credentials))
+                    .response.getHeader(JWTSecurityService.AUTHORIZATION_HEADER)
+            tenantId = TenantFilter.unfiltered(entityManager, { userRepository.findByEmail(ADMIN_EMAIL) }).get().groupId
+        }
+        hasher.inTransaction.clear()
+    }
+
+    @Unroll
+    def "#change a user hashes the password before its transaction begins"() {
+        given:
+        def id = change == "adding" ? null : addUser("${change}@hashing.io")
+        hasher.inTransaction.clear()
+
+        when:
+        perform(request(change, id))
+
+        then:
+        hasher.inTransaction == [false]
+
+        where:
+        change << ["adding", "replacing", "patching"]
+    }
+
+    private MockHttpServletRequestBuilder request(String change, String id) {
+        switch (change) {
+            case "adding":
+                return post("/groups/${tenantId}/users").contentType(MediaType.APPLICATION_JSON)
+                        .content(JsonOutput.toJson(user("added@hashing.io")))
+            case "replacing":
+                return put("/users/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .content(JsonOutput.toJson(json(perform(get("/users/" + id))) + [password: "replaced"]))
+            default:
+                return patch("/users/" + id).contentType(MediaType.APPLICATION_JSON)
+                        .content(JsonOutput.toJson([password: "patched"]))
+        }
+    }
+
+    private String addUser(String email) {
+        return json(perform(post("/groups/${tenantId}/users")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content(JsonOutput.toJson(user(email))))).id
+    }
+
+    private static Map user(String email) {
+        return [email : email, firstName: "Password", lastName: "Hashing",
+                locale: "EN", type: "USER", password: "password", enabled: true]
+    }
+
+    private static Map json(MvcResult result) {
+        return new JsonSlurper().parseText(result.response.contentAsString) as Map
+    }
+
+    private MvcResult perform(MockHttpServletRequestBuilder builder) {
+        if (bearer != null) {
+            builder.header(JWTSecurityService.AUTHORIZATION_HEADER, bearer)
+        }
+
+        MvcResult result = mvc.perform(builder).andReturn()
+        assert result.response.status < 400: result.response.contentAsString
+        return result
+    }
+}
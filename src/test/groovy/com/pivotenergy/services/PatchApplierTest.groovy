@@ -0,0 +1,84 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.domain.Group
+import com.pivotenergy.domain.User
+import spock.lang.Specification
+import spock.lang.Unroll
+
+class PatchApplierTest extends Specification {
+
+    @Unroll
+    def "#property is converted from #value"() {
+        when:
+        def user = UserService.PATCH.apply(new User(), [(property): value])
+
+        then:
+        user."${property}" == expected
+
+        where:
+        property              | value                      | expected
+        "firstName"           | "Jane"                     | "Jane"
+        "firstName"           | 42                         | "42"
+        "enabled"             | true                       | true
+        "enabled"             | "false"                    | false
+        "failedLoginAttempts" | 3                          | 3
+        "failedLoginAttempts" | 3L                         | 3
+        "failedLoginAttempts" | "7"                        | 7
+        "lastLoginAttempt"    | 0L                         | new Date(0)
+        "lastLoginAttempt"    | "1970-01-01T00:00:00.000Z" | new Date(0)
+        "type"                | "ADMIN"                    | User.Type.ADMIN
+        "locale"              | null                       | null
+    }
+
+    @Unroll
+    def "#value is rejected for #property"() {
+        when:
+        UserService.PATCH.apply(new User(), [(property): value])
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message.contains("User.${property}")
+
+        where:
+        property              | value
+        "enabled"             | "yes"
+        "enabled"             | 1
+        "failedLoginAttempts" | "many"
+        "failedLoginAttempts" | 1.5
+        "lastLoginAttempt"    | "yesterday"
+        "type"                | "OWNER"
+        "type"                | 1
+    }
+
+    def "unknown properties are rejected"() {
+        when:
+        GroupService.PATCH.apply(new Group(), [name: "Renamed", nickname: "x"])
+
+        then:
+        def e = thrown(IllegalArgumentException)
+        e.message == "Unknown property 'nickname' for Group"
+    }
+
+    def "ignored and denied properties are accepted but not written"() {
+        given:
+        def user = new User().setFirstName("Jane").setType(User.Type.USER)
+
+        when: "owners may not change their type"
+        UserService.OWNER_PATCH.apply(user, [roles: [], group: null, type: "ADMIN", firstName: "Joan"])
+
+        then:
+        user.firstName == "Joan"
+        user.type == User.Type.USER
+        !UserService.OWNER_PATCH.fields.contains("type")
+        UserService.ADMIN_OR_SUPPORT_PATCH.fields.contains("type")
+    }
+
+    def "passwords are kept in plain text for the hasher"() {
+        when:
+        def user = UserService.PATCH.apply(new User(), [password: "secret"])
+
+        then:
+        user.rawPassword == "secret"
+        user.password == null
+    }
+}
@@ -0,0 +1,109 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.domain.User
+import com.pivotenergy.exceptions.PivotEntityNotFoundException
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+@Timeout(10)
+class SingleFlightTest extends Specification {
+    private static final int CALLERS = 16
+
+    def singleFlight = new SingleFlight<Object>()
+    def executor = Executors.newFixedThreadPool(CALLERS)
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "concurrent callers of the same key share one query"() {
+        given:
+        def queries = new AtomicInteger()
+        def release = new CountDownLatch(1)
+        def result = new Object()
+
+        when: "the query is held until every caller has joined it"
+        def futures = (1..CALLERS).collect {
+            executor.submit({
+                singleFlight.execute("tenant/User/1", {
+                    queries.incrementAndGet()
+                    release.await()
+                    result
+                })
+            } as Callable)
+        }
+        while (singleFlight.callers("tenant/User/1") < CALLERS) {
+            Thread.sleep(1)
+        }
+        release.countDown()
+
+        then:
+        futures.every { it.get().is(result) }
+        queries.get() == 1
+        singleFlight.callers("tenant/User/1") == 0
+    }
+
+    def "callers of another tenant do not share the query"() {
+        given:
+        def release = new CountDownLatch(1)
+
+        when:
+        def north = executor.submit({
+            singleFlight.execute("north/User/1", { release.await(); "north" })
+        } as Callable)
+        while (singleFlight.callers("north/User/1") < 1) {
+            Thread.sleep(1)
+        }
+        def south = singleFlight.execute("south/User/1", { "south" })
+        release.countDown()
+
+        then:
+        south == "south"
+        north.get() == "north"
+    }
+
+    def "a failure is shared by the callers waiting for it"() {
+        given:
+        def release = new CountDownLatch(1)
+        def failure = new PivotEntityNotFoundException(User, "1")
+
+        when:
+        def futures = (1..2).collect {
+            executor.submit({
+                singleFlight.execute("tenant/User/1", { release.await(); throw failure })
+            } as Callable)
+        }
+        while (singleFlight.callers("tenant/User/1") < 2) {
+            Thread.sleep(1)
+        }
+        release.countDown()
+
+        then:
+        futures.every { future ->
+            try {
+                future.get()
+                false
+            }
+            catch (ExecutionException e) {
+                e.cause.is(failure)
+            }
+        }
+    }
+
+    def "results are not kept once the query completed"() {
+        given:
+        def queries = new AtomicInteger()
+
+        when:
+        2.times { singleFlight.execute("tenant/User/1", { queries.incrementAndGet() }) }
+
+        then:
+        queries.get() == 2
+    }
+}
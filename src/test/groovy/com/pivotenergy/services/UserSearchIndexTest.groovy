@@ -0,0 +1,87 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.domain.User
+import com.pivotenergy.repositories.UserRepository
+import spock.lang.Specification
+
+import java.util.function.Consumer
+
+class UserSearchIndexTest extends Specification {
+    def tenants = [
+            "tenant-a": [
+                    [id: "1", email: "john.doe@test.io", firstName: "John", lastName: "Doe"],
+                    [id: "2", email: "jane.smith@test.io", firstName: "Jane", lastName: "Smith"],
+                    [id: "3", email: "bob.johnson@test.io", firstName: "Bob", lastName: "Johnson"]
+            ],
+            "tenant-b": [
+                    [id: "4", email: "john.other@test.io", firstName: "John", lastName: "Other"]
+            ]
+    ]
+
+    def userRepository = Stub(UserRepository) {
+        streamProjected(_ as String, _ as Collection, _ as Integer, _ as Consumer) >> { String tenantId, fields, fetchSize, Consumer consumer ->
+            def rows = tenants[tenantId] ?: []
+            rows.each { consumer.accept(it) }
+            rows.size() as long
+        }
+    }
+
+    def index = new UserSearchIndex(userRepository, 2, 100, 100)
+
+    def "prefixes of email, first and last name match before infixes"() {
+        when:
+        def result = index.search("tenant-a", "Jo", 10).get()
+
+        then:
+        result*.id == ["1", "3"]
+
+        when:
+        result = index.search("tenant-a", "ohn", 10).get()
+
+        then:
+        result*.id as Set == ["1", "3"] as Set
+    }
+
+    def "results are limited and never cross tenants"() {
+        expect:
+        index.search("tenant-a", "test.io", 10).get()*.id as Set == ["1", "2", "3"] as Set
+        index.search("tenant-a", "test.io", 2).get().size() == 2
+        index.search("tenant-b", "john", 10).get()*.id == ["4"]
+    }
+
+    def "changes are applied to a loaded index"() {
+        given:
+        index.search("tenant-a", "x", 10)
+
+        when:
+        index.put("tenant-a", new User().setEmail("alice@test.io").setFirstName("Alice").setLastName("Johnson"))
+        index.remove("tenant-a", "3")
+
+        then:
+        index.search("tenant-a", "johnson", 10).get()*.email == ["alice@test.io"]
+        index.search("tenant-a", "bob", 10).get().isEmpty()
+    }
+
+    def "tenants above the size limit are not indexed"() {
+        given:
+        def small = new UserSearchIndex(userRepository, 2, 2, 100)
+
+        expect:
+        !small.search("tenant-a", "john", 10).isPresent()
+        small.search("tenant-b", "john", 10).isPresent()
+    }
+
+    def "the least recently searched tenants are dropped once all tenants hold too many users"() {
+        given: "room for three users across tenants"
+        def bounded = new UserSearchIndex(userRepository, 16, 100, 3)
+        bounded.search("tenant-a", "x", 10)
+
+        when: "a second tenant brings the total to four"
+        bounded.search("tenant-b", "x", 10)
+        bounded.put("tenant-a", new User().setEmail("late@test.io").setFirstName("Late").setLastName("User"))
+
+        then: "the first tenant was dropped and is rebuilt from the database on its next search"
+        bounded.search("tenant-a", "late", 10).get().isEmpty()
+        bounded.search("tenant-a", "john", 10).get()*.id == ["1"]
+    }
+}
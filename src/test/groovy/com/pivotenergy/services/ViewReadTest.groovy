@@ -0,0 +1,124 @@
+package com.pivotenergy.services
+
+import com.pivotenergy.datasource.ReplicaRoutingDataSource
+import com.pivotenergy.domain.Group
+import com.pivotenergy.exceptions.PivotEntityNotFoundException
+import com.pivotenergy.repositories.GroupRepository
+import org.springframework.data.domain.Pageable
+import org.springframework.data.domain.Slice
+import org.springframework.transaction.PlatformTransactionManager
+import org.springframework.transaction.TransactionStatus
+import spock.lang.Specification
+import spock.lang.Timeout
+
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+
+@Timeout(10)
+class ViewReadTest extends Specification {
+    private static final int CALLERS = 16
+    private static final String KEY = "null/Group/1"
+
+    def repository = Mock(GroupRepository)
+    def transactionManager = Mock(PlatformTransactionManager)
+    def executor = Executors.newFixedThreadPool(CALLERS)
+    def group = new Group().setName("viewed")
+
+    def service = new BaseService<Group, Group, GroupRepository>(Group, repository) {
+        @Override
+        Group view(Group group) { group }
+
+        @Override
+        Slice<Group> findSlice(Pageable request) { null }
+
+        @Override
+        Optional<Long> findVersion(String id) { Optional.empty() }
+
+        @Override
+        String countKey() { "tenant" }
+
+        @Override
+        Group patch(String id, Map<String, Object> patch, Long expectedVersion) { null }
+
+        @Override
+        void softDelete(String id) {}
+
+        @Override
+        void hardDelete(String id) {}
+    }
+
+    def setup() {
+        service.setTransactionManager(transactionManager)
+    }
+
+    def cleanup() {
+        executor.shutdownNow()
+    }
+
+    def "concurrent reads of one entity run one query in one transaction"() {
+        given:
+        def transactions = new AtomicInteger()
+        def release = new CountDownLatch(1)
+        transactionManager.getTransaction(_) >> { transactions.incrementAndGet(); Mock(TransactionStatus) }
+
+        when: "the query is held until every caller has joined it"
+        def futures = (1..CALLERS).collect {
+            executor.submit({ service.getViewById("1") } as Callable)
+        }
+        while (service.viewReads.callers(KEY) < CALLERS) {
+            Thread.sleep(1)
+        }
+        release.countDown()
+
+        then:
+        futures.every { it.get().is(group) }
+        1 * repository.findById("1") >> { release.await(); Optional.of(group) }
+
+        and: "callers waiting for the query never began a transaction"
+        transactions.get() == 1
+    }
+
+    def "a caller sticky to the primary does not join a read which may have gone to the replica"() {
+        given:
+        def reader = Thread.currentThread()
+        def release = new CountDownLatch(1)
+        def written = new Group().setName("written")
+        service.setReplicaRouting(Stub(ReplicaRoutingDataSource) {
+            isCallerSticky() >> { Thread.currentThread() == reader }
+        })
+        transactionManager.getTransaction(_) >> Mock(TransactionStatus)
+        repository.findById("1") >> {
+            if (Thread.currentThread() == reader) {
+                return Optional.of(written)
+            }
+            release.await()
+            return Optional.of(group)
+        }
+
+        when: "another caller's read is in flight"
+        def shared = executor.submit({ service.getViewById("1") } as Callable)
+        while (service.viewReads.callers(KEY) < 1) {
+            Thread.sleep(1)
+        }
+        def own = service.getViewById("1")
+        release.countDown()
+
+        then:
+        own.is(written)
+        shared.get().is(group)
+    }
+
+    def "a missing entity is reported to the caller as is"() {
+        given:
+        transactionManager.getTransaction(_) >> Mock(TransactionStatus)
+        repository.findById("1") >> Optional.empty()
+
+        when:
+        service.getViewById("1")
+
+        then:
+        thrown(PivotEntityNotFoundException)
+    }
+}
@@ -0,0 +1,80 @@
+package com.pivotenergy.datasource;
+
+import com.pivotenergy.security.model.UserSession;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.security.authentication.TestingAuthenticationToken;
+import org.springframework.security.core.context.SecurityContextHolder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares resolving the tenant with {@code ?#{authentication.tenantId}} in every query of a transaction
+ * with binding it to the {@link TenantFilter} once per transaction. The SQL sent to the database is the
+ * same either way, only the work done before each statement differs.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TenantFilterBenchmark {
+    @Param({"1", "5"})
+    private int queriesPerTransaction;
+
+    private Expression expression;
+
+    /**
+     * Root object of the evaluation context, as the security extension of Spring Data exposes it
+     */
+    public static class Root {
+        private final UserSession authentication;
+
+        Root(UserSession authentication) {
+            this.authentication = authentication;
+        }
+
+        public UserSession getAuthentication() {
+            return authentication;
+        }
+    }
+
+    @Setup
+    public void setup() {
+        UserSession session = new UserSession();
+        session.setGroupId("0169f5ab-5cbb-7000-8000-000000000001");
+        SecurityContextHolder.getContext().setAuthentication(new TestingAuthenticationToken(session, null));
+        // parsed once, as Spring Data does when the repository is created
+        expression = new SpelExpressionParser().parseExpression("authentication.tenantId");
+    }
+
+    @TearDown
+    public void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    @Benchmark
+    public void spelPerQuery(Blackhole blackhole) {
+        for (int i = 0; i < queriesPerTransaction; i++) {
+            // every execution builds a new evaluation context around the current authentication
+            Root root = new Root((UserSession) SecurityContextHolder.getContext().getAuthentication().getPrincipal());
+            blackhole.consume(expression.getValue(new StandardEvaluationContext(root), String.class));
+        }
+    }
+
+    @Benchmark
+    public String filterPerTransaction() {
+        return TenantFilter.tenantOrNull();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(TenantFilterBenchmark.class.getSimpleName()).build()).run();
+    }
+}
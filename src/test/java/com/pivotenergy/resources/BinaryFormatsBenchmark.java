@@ -0,0 +1,108 @@
+package com.pivotenergy.resources;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.module.afterburner.AfterburnerModule;
+import com.pivotenergy.domain.Group;
+import com.pivotenergy.domain.Role;
+import com.pivotenergy.domain.User;
+import com.pivotenergy.model.response.UserView;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serializes a page of 100 user views and reads it back into entities, as a Java consumer sharing the
+ * domain does, in JSON, Smile and CBOR with and without Afterburner. The payload size of each format is
+ * printed when a trial starts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BinaryFormatsBenchmark {
+    private static final int PAGE_SIZE = 100;
+
+    @Param({"json", "smile", "cbor"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean afterburner;
+
+    private ObjectWriter writer;
+    private ObjectReader reader;
+    private List<UserView> page;
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper(factory(format))
+                .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+        if (afterburner) {
+            objectMapper.registerModule(new AfterburnerModule());
+        }
+        writer = objectMapper.writerFor(objectMapper.getTypeFactory().constructCollectionType(List.class, UserView.class));
+        reader = objectMapper.readerFor(User[].class);
+
+        Group group = new Group().setName("Benchmark").setType(Group.Type.CLIENT);
+        page = new ArrayList<>(PAGE_SIZE);
+        for (int i = 0; i < PAGE_SIZE; i++) {
+            User user = new User()
+                    .setGroup(group)
+                    .setType(User.Type.USER)
+                    .setLocale("EN")
+                    .setEmail("user" + i + "@benchmark.io")
+                    .setFirstName("First" + i)
+                    .setLastName("Last" + i)
+                    .setEnabled(true)
+                    .setFailedLoginAttempts(i % 5)
+                    .setLastLoginAttempt(new Date())
+                    .addRole(new Role().setRole(Role.Scope.ROLE_USER, Role.Action.READ, Role.Target.GLOBAL))
+                    .addRole(new Role().setRole(Role.Scope.ROLE_USER, Role.Action.UPDATE, Role.Target.BUILDINGS));
+            user.setVersion((long) i);
+            page.add(UserView.of(user));
+        }
+
+        payload = writer.writeValueAsBytes(page);
+        System.out.printf("%n%s payload of %d users: %d bytes%n", format, PAGE_SIZE, payload.length);
+    }
+
+    @Benchmark
+    public byte[] serialize() throws IOException {
+        return writer.writeValueAsBytes(page);
+    }
+
+    @Benchmark
+    public User[] deserialize() throws IOException {
+        return reader.readValue(payload);
+    }
+
+    private static JsonFactory factory(String format) {
+        switch (format) {
+            case "smile":
+                return new SmileFactory();
+            case "cbor":
+                return new CBORFactory();
+            default:
+                return new JsonFactory();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(BinaryFormatsBenchmark.class.getSimpleName()).build()).run();
+    }
+}
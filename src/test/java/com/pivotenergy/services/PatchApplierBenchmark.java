@@ -0,0 +1,62 @@
+package com.pivotenergy.services;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.pivotenergy.domain.User;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the former JSON round trip used by the patch endpoints with the compiled {@link PatchApplier}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PatchApplierBenchmark {
+    private User user;
+    private Map<String, Object> patch;
+
+    @Setup
+    public void setup() {
+        user = new User()
+                .setType(User.Type.USER)
+                .setLocale("EN")
+                .setEmail("john.doe@test.io")
+                .setFirstName("John")
+                .setLastName("Doe");
+
+        patch = new HashMap<>();
+        patch.put("firstName", "Jane");
+        patch.put("lastName", "Roe");
+        patch.put("locale", "en-US");
+        patch.put("enabled", true);
+        patch.put("failedLoginAttempts", 2);
+        patch.put("lastLoginAttempt", "2019-05-15T10:15:30.000+0000");
+    }
+
+    @Benchmark
+    public User jsonRoundTrip() throws IOException {
+        ObjectMapper objectMapper = new ObjectMapper();
+        ObjectReader objectReader = objectMapper.readerForUpdating(user);
+        return objectReader.readValue(objectMapper.writeValueAsString(patch));
+    }
+
+    @Benchmark
+    public User compiledApplier() {
+        return UserService.ADMIN_OR_SUPPORT_PATCH.apply(user, patch);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PatchApplierBenchmark.class.getSimpleName()).build()).run();
+    }
+}
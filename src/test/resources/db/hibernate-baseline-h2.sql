@@ -0,0 +1,17 @@
+-- Schema hibernate schema updates created for the entities of the release before the migrations
+-- existed (H2Dialect, hibernate.hbm2ddl.auto=update). Databases of that release carry this schema.
+
+create table user_group (id varchar(255) not null, created_at timestamp, created_by varchar(255), deleted boolean, updated_at timestamp, updated_by varchar(255), company_name varchar(255), company_website varchar(255), contact_email varchar(255), logo_image varchar(255), name varchar(255), phone_number varchar(20), type varchar(128) not null, primary key (id));
+create table user (id varchar(255) not null, created_at timestamp, created_by varchar(255), deleted boolean, updated_at timestamp, updated_by varchar(255), group_id varchar(255), email varchar(255), enabled boolean not null, expired boolean not null, failed_login_attempts integer not null, first_name varchar(255), last_login_attempt timestamp, last_name varchar(255), locale varchar(255), locked boolean not null, password varchar(255), type varchar(255) not null, primary key (id));
+create table role (id varchar(255) not null, created_at timestamp, created_by varchar(255), deleted boolean, updated_at timestamp, updated_by varchar(255), group_id varchar(255), action varchar(255), role varchar(128) not null, scope varchar(255), target varchar(255), user_id varchar(255), primary key (id));
+create table user_refresh_token (id varchar(255) not null, created_at timestamp, created_by varchar(255), deleted boolean, updated_at timestamp, updated_by varchar(255), group_id varchar(255), expires_at timestamp not null, token varchar(255) not null, user_id varchar(255), primary key (id));
+alter table user_group add constraint UK_8q3xkkxqsgvx1w05ccbrkd8fb unique (company_name);
+alter table user_group add constraint UK_1o4gqb1gr4h0pskq8sd4cu1kj unique (company_website);
+alter table user_group add constraint UK_tcqb6oqr1j1c0j3qfmfh0qfo8 unique (contact_email);
+alter table user_group add constraint UK_5wvjmqhx3rp5fp0s3q6hpu5xv unique (logo_image);
+alter table user_group add constraint UK_9c2spxbaj1rfdvkgaehgbno7i unique (phone_number);
+alter table user add constraint UK_ob8kqyqqgmefl0aco34akdtpe unique (email);
+alter table user_refresh_token add constraint UK_2j8fcpt6yf4a9e7kv8h1hsuet unique (token);
+alter table role add constraint FKgd6b2ep8b5sar2kdcwy9ju59q foreign key (user_id) references user;
+alter table user add constraint FK8b2w6ny3xcngfw2i8c4u5n5yd foreign key (group_id) references user_group;
+alter table user_refresh_token add constraint FKb8hy5ql0a9gy5nlb5acyb1djn foreign key (user_id) references user;